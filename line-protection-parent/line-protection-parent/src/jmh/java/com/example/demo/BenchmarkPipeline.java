@@ -0,0 +1,51 @@
+package com.example.demo;
+
+import com.example.demo.csv.CapeCsvParser;
+import com.example.demo.formula.FormulaEvaluationService;
+import com.example.demo.mapping.CellMappingService;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.service.CalculationSheetGenerator;
+import com.example.demo.service.GenerationGate;
+import com.example.demo.service.ResultCache;
+import com.example.demo.service.SubmissionRecorder;
+import com.example.demo.template.GenerationMode;
+import com.example.demo.template.StreamingWorkbookWriter;
+import com.example.demo.template.TemplateCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Duration;
+
+/**
+ * The upload pipeline wired by hand with the application defaults, without
+ * a Spring context, database (submissions are not recorded) or result cache
+ */
+public final class BenchmarkPipeline {
+
+    public static final String TEMPLATE = "classpath:Line Protection Calculation Sheet Template.xlsm";
+    public static final String MAPPING = "classpath:mappings/cell-mapping-v1.csv";
+
+    public final TemplateCache templateCache;
+    public final CellMappingService cellMappings;
+    public final CalculationSheetGenerator generator;
+    public final FormDataController controller;
+
+    public BenchmarkPipeline(GenerationMode mode) throws Exception {
+        DefaultResourceLoader resources = new DefaultResourceLoader();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        templateCache = new TemplateCache(resources, registry, metrics, TEMPLATE, false);
+        cellMappings = new CellMappingService(resources, templateCache, MAPPING);
+        generator = new CalculationSheetGenerator(templateCache, cellMappings, new CapeCsvParser(),
+                new StreamingWorkbookWriter(),
+                new ResultCache(registry, false, 0, "", 0, 0),
+                new FormulaEvaluationService(templateCache, resources, false, ""),
+                new GenerationGate(registry, false, 0, Duration.ZERO, false),
+                metrics, mode, 0);
+        controller = new FormDataController(generator,
+                new SubmissionRecorder(null, null, null, registry, false, 1, 1), metrics);
+
+        cellMappings.planFor(templateCache.get());
+    }
+}
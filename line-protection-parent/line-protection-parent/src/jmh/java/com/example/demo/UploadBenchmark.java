@@ -0,0 +1,59 @@
+package com.example.demo;
+
+import com.example.demo.csv.SyntheticCapeCsv;
+import com.example.demo.template.GenerationMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end /upload: form JSON and CSV in, complete workbook out, through
+ * FormDataController with each rendering mode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UploadBenchmark {
+
+    private static final String FORM_DATA = "{\"relayLocation\":\"HOYRD\",\"lineNumber\":\"5586\","
+            + "\"remoteLocation\":\"YANDELL\",\"nominalSystemVoltage\":\"138\",\"breakerRating\":\"2000\","
+            + "\"conductorRating\":\"1200\",\"ctrW\":\"2000\",\"ctrX\":\"400\",\"ptry\":\"1200\","
+            + "\"secondlines\":\"3\",\"numberOfTaps\":\"0\",\"numberOfBreakers\":\"2\"}";
+
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    @Param({"POI", "STREAMING"})
+    public GenerationMode mode;
+
+    private FormDataController controller;
+    private MockMultipartFile csvFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        controller = new BenchmarkPipeline(mode).controller;
+        byte[] csv = SyntheticCapeCsv.generate(rows, 12, 8, 42).getBytes(StandardCharsets.UTF_8);
+        csvFile = new MockMultipartFile("csvFile", "cape.csv", "text/csv", csv);
+    }
+
+    @Benchmark
+    public void handleUpload() throws Exception {
+        controller.handleUpload(FORM_DATA, csvFile, false).getBody().writeTo(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.csv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-pass CSV parse, section detection and infeed / impedance extraction
+ * included, over synthetic exports of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapeCsvParserBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rows;
+
+    // Rows the v1 cell mapping reads
+    private static final int KEEP_ROWS = 27;
+
+    private final CapeCsvParser parser = new CapeCsvParser();
+    private String csv;
+
+    @Setup
+    public void setUp() {
+        csv = SyntheticCapeCsv.generate(rows, 12, 8, 42);
+    }
+
+    @Benchmark
+    public CapeCsvData parse() throws IOException {
+        return parser.parse(new StringReader(csv), KEEP_ROWS);
+    }
+}
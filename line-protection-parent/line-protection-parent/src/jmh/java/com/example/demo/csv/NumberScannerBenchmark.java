@@ -0,0 +1,51 @@
+package com.example.demo.csv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number extraction from CAPE cell text, over a mix of the forms seen in exports
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumberScannerBenchmark {
+
+    private final String[] cells = {
+            "-3656.358", "1,234.5 ohm", "12.7 mi", "-3.2e-1", "+48.8352", "Infinite", "INF", "N/A", "", "74.43 deg"
+    };
+
+    @Benchmark
+    public void firstNumber(Blackhole bh) {
+        for (String c : cells) {
+            bh.consume(NumberScanner.firstNumber(c));
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (String c : cells) {
+            bh.consume(NumberScanner.parse(c));
+        }
+    }
+
+    @Benchmark
+    public void parseExact(Blackhole bh) {
+        for (String c : cells) {
+            bh.consume(NumberScanner.parseExact(c));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.csv;
+
+import java.util.Random;
+
+/**
+ * Synthetic CAPE fault-study exports with the layout the parser and the cell
+ * mapping expect: the fault summary rows on top, the INFEED TAB and the APA
+ * IMPEDANCES TAB, padded with unrelated study output to reach a given size.
+ * The same seed always gives the same file.
+ */
+public final class SyntheticCapeCsv {
+
+    private static final String[] SUMMARY_LABELS = {
+            "Min Line End SLG", "Min 1LG", "LL I2", "x", "x", "x", "n-1 SLG", "n-1 I2", "Rev 1LG", "CEO", "CEC",
+            "blank", "SSR", "L2NDL", "blank", "DIFF1A", "blank", "DIFF1B", "DIFF2A", "DIFF2B", "blank",
+            "XR3LG", "XRSLG", "XRN0", "XR13LG", "XR11LG", "XRN1"
+    };
+
+    private SyntheticCapeCsv() {
+    }
+
+    /**
+     * An export of roughly rows lines with buses infeed blocks (at most 12 are read)
+     * and secondLines second line impedance blocks
+     */
+    public static String generate(int rows, int buses, int secondLines, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder(rows * 64);
+
+        for (String label : SUMMARY_LABELS) {
+            sb.append(label).append(",A");
+            for (int c = 2; c < 14; c++) {
+                sb.append(',').append(summaryValue(rnd));
+            }
+            sb.append('\n');
+        }
+        int fixed = SUMMARY_LABELS.length + 2 + 3 * buses + 4 + 4 * secondLines;
+        int filler = Math.max(0, rows - fixed);
+
+        // Study output the parser has to skip: half before the infeed, half between the sections
+        filler(sb, rnd, filler / 2);
+
+        sb.append("INFEED TAB\n");
+        for (int b = 0; b < buses; b++) {
+            sb.append(",WHEN APPLYING BUS FAULT AT: BUS").append(b).append(" 138kV\n");
+            sb.append(",Mag,").append(fixed(rnd, 100, 9000, 2)).append(",A\n");
+            sb.append(",Ang,").append(fixed(rnd, -90, 90, 2)).append(",deg\n");
+        }
+        filler(sb, rnd, filler - filler / 2);
+
+        sb.append("APA IMPEDANCES TAB\n");
+        sb.append(",FIRST LINE IMPEDENCE AT BUS: 1234 HOYRD\n");
+        sb.append(",Z1,\"1,234.5 ohm\",INF\n");
+        sb.append(",Z0,-3.2e-1,4.5\n");
+        sb.append(",Miles,12.7 mi\n");
+        for (int k = 0; k < secondLines; k++) {
+            sb.append(",SECOND LINE IMPEDENCES FOR LINE: ").append(5500 + k).append("-YANDELL-").append(20 + k).append('\n');
+            sb.append(",Z1,").append(fixed(rnd, 0, 5, 4)).append(',').append(fixed(rnd, 0, 50, 4)).append('\n');
+            sb.append(",Z0,").append(rnd.nextInt(3) == 0 ? "Infinite" : fixed(rnd, 0, 5, 4))
+                    .append(",+").append(fixed(rnd, 0, 50, 4)).append('\n');
+            sb.append(",Miles,").append(fixed(rnd, 1, 80, 1)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void filler(StringBuilder sb, Random rnd, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append("BUS ").append(rnd.nextInt(9000)).append(" FAULT,");
+            sb.append(fixed(rnd, -5000, 5000, 3)).append(',').append(fixed(rnd, -180, 180, 2)).append(",,");
+            sb.append(fixed(rnd, 0, 100, 2)).append('\n');
+        }
+    }
+
+    private static String summaryValue(Random rnd) {
+        return switch (rnd.nextInt(5)) {
+            case 0 -> fixed(rnd, -5000, 5000, 3);
+            case 1 -> fixed(rnd, 0, 90, 2);
+            case 2 -> "";
+            case 3 -> "N/A";
+            default -> Integer.toString(1 + rnd.nextInt(99));
+        };
+    }
+
+    private static String fixed(Random rnd, double min, double max, int decimals) {
+        double v = min + (max - min) * rnd.nextDouble();
+        return String.format(java.util.Locale.ROOT, "%." + decimals + "f", v);
+    }
+}
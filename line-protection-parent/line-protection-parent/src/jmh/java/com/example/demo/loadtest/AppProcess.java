@@ -0,0 +1,109 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.LineProtectionApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application in a child JVM on a free port, with an in-memory H2
+ * database in place of Postgres, for the load test and startup benchmark
+ */
+final class AppProcess implements AutoCloseable {
+
+    private final Process process;
+    private final String url;
+    private final File log;
+
+    private AppProcess(Process process, String url, File log) {
+        this.process = process;
+        this.url = url;
+        this.log = log;
+    }
+
+    /**
+     * Start the app from this JVM's classpath; jvmOptions and appArgs are
+     * whitespace separated and may be blank
+     */
+    static AppProcess start(String jvmOptions, String appArgs, File log) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.addAll(split(jvmOptions));
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(LineProtectionApplication.class.getName());
+        cmd.add("--server.port=" + port);
+        cmd.add("--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        cmd.add("--spring.datasource.username=sa");
+        cmd.add("--spring.datasource.password=");
+        cmd.add("--spring.datasource.driver-class-name=org.h2.Driver");
+        cmd.add("--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect");
+        // The benchmarks' logback-test.xml is on this classpath; keep the app's own levels
+        cmd.add("--logging.level.root=INFO");
+        cmd.addAll(split(appArgs));
+
+        Process process = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(log).start();
+        return new AppProcess(process, "http://localhost:" + port, log);
+    }
+
+    String url() {
+        return url;
+    }
+
+    Process process() {
+        return process;
+    }
+
+    File log() {
+        return log;
+    }
+
+    /**
+     * Poll url/health every pollMillis until it answers 200; app, when not
+     * null, is the process expected to serve it
+     */
+    static void awaitHealthy(HttpClient http, String url, Process app, long pollMillis) throws Exception {
+        HttpRequest health = HttpRequest.newBuilder(URI.create(url + "/health")).timeout(Duration.ofSeconds(5)).build();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+        while (System.nanoTime() < deadline) {
+            if (app != null && !app.isAlive()) {
+                throw new IllegalStateException("App exited with " + app.exitValue() + " before becoming healthy");
+            }
+            try {
+                if (http.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(pollMillis);
+        }
+        throw new IllegalStateException("App at " + url + " not healthy within 3 minutes");
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    static List<String> split(String s) {
+        return s.isBlank() ? List.of() : Arrays.asList(s.trim().split("\\s+"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.csv.SyntheticCapeCsv;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cold starts of the application: each run starts a fresh JVM and measures
+ * the time until /health answers, the JVM uptime Spring reports at
+ * "Started", and the latency of the first /upload, which carries whatever
+ * work the start deferred. Exits with status 1 when the median time to
+ * health exceeds --target-ms.
+ *
+ * <pre>
+ *   mvn -Pbenchmarks test-compile exec:exec@startup -Dstartup.args="--runs 5 --app-args --spring.profiles.active=fast-start"
+ *
+ *   --runs N             cold starts (5)
+ *   --app-jvm "OPTS"     JVM options of the started app ("-Xmx1g"), e.g. "-XX:SharedArchiveFile=app.jsa"
+ *   --app-args "ARGS"    extra application arguments
+ *   --target-ms N        fail when the median time to health is above N (off)
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in [\\d.]+ seconds \\(process running for ([\\d.]+)\\)");
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final Map<String, String> options;
+
+    private StartupBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got '" + args[i] + "'");
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        System.exit(new StartupBenchmark(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        String jvm = options.getOrDefault("app-jvm", "-Xmx1g");
+        String args = options.getOrDefault("app-args", "");
+        byte[] upload = UploadLoadTest.multipart(SyntheticCapeCsv.generate(500, 12, 8, 7));
+        File log = new File(System.getProperty("java.io.tmpdir"), "cape-startup-app.log");
+        System.out.printf(Locale.ROOT, "%d cold starts, JVM [%s], args [%s], log in %s%n", runs, jvm, args, log);
+
+        double[] health = new double[runs];
+        double[] started = new double[runs];
+        double[] firstUpload = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            try (AppProcess app = AppProcess.start(jvm, args, log)) {
+                AppProcess.awaitHealthy(http, app.url(), app.process(), 20);
+                health[i] = (System.nanoTime() - t0) / 1e6;
+
+                long u0 = System.nanoTime();
+                HttpRequest request = HttpRequest.newBuilder(URI.create(app.url() + "/upload"))
+                        .header("Content-Type", "multipart/form-data; boundary=" + UploadLoadTest.BOUNDARY)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(upload))
+                        .build();
+                int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status != 200) {
+                    throw new IllegalStateException("First upload returned HTTP " + status);
+                }
+                firstUpload[i] = (System.nanoTime() - u0) / 1e6;
+                started[i] = startedMillis(app.log());
+            }
+            System.out.printf(Locale.ROOT, "run %d: health %.0f ms, started at %.0f ms, first upload %.0f ms%n",
+                    i + 1, health[i], started[i], firstUpload[i]);
+        }
+
+        System.out.println();
+        System.out.println("                      min    median       max   (ms)");
+        row("time to /health", health);
+        row("Spring 'Started'", started);
+        row("first /upload", firstUpload);
+
+        String target = options.get("target-ms");
+        if (target != null) {
+            double median = median(health);
+            boolean met = median <= Double.parseDouble(target);
+            System.out.printf(Locale.ROOT, "%nTarget %s ms to /health: %s (median %.0f ms)%n",
+                    target, met ? "met" : "MISSED", median);
+            return met;
+        }
+        return true;
+    }
+
+    private static double startedMillis(File log) throws IOException {
+        Matcher m = STARTED.matcher(Files.readString(log.toPath(), StandardCharsets.UTF_8));
+        return m.find() ? Double.parseDouble(m.group(1)) * 1000 : Double.NaN;
+    }
+
+    private static void row(String name, double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%-18s %9.0f %9.0f %9.0f%n", name, sorted[0], median(values), sorted[sorted.length - 1]);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return (sorted.length % 2 == 1) ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+}
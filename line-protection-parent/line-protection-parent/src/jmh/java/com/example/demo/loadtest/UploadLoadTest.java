@@ -0,0 +1,307 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.csv.SyntheticCapeCsv;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives /upload with synthetic CAPE exports at a fixed concurrency and
+ * reports latency percentiles, throughput and the server's heap and GC cost
+ * per request. Without --url the application is started in a child JVM on
+ * a free port with an in-memory H2 database in place of Postgres, so the
+ * server's numbers are not mixed with the client's.
+ *
+ * <pre>
+ *   mvn -Pbenchmarks test-compile exec:exec@loadtest -Dloadtest.args="--concurrency 8 --requests 400"
+ *
+ *   --url URL            target an already running app instead of starting one
+ *   --concurrency N      requests in flight (4)
+ *   --requests N         measured requests (200)
+ *   --warmup N           unmeasured requests first (20)
+ *   --buses N            infeed buses per CSV (12)
+ *   --second-lines N     second line impedances per CSV (8)
+ *   --rows N             CSV size in rows (500)
+ *   --distinct N         distinct CSVs cycled through; 0 = every request unique (0)
+ *   --app-jvm "OPTS"     JVM options of the started app ("-Xmx1g")
+ *   --app-args "ARGS"    extra application arguments, e.g. "--generation.mode=streaming"
+ * </pre>
+ */
+public final class UploadLoadTest {
+
+    private static final String FORM_DATA = "{\"relayLocation\":\"HOYRD\",\"lineNumber\":\"5586\","
+            + "\"remoteLocation\":\"YANDELL\",\"nominalSystemVoltage\":\"138\",\"breakerRating\":\"2000\","
+            + "\"conductorRating\":\"1200\",\"ctrW\":\"2000\",\"ctrX\":\"400\",\"ptry\":\"1200\","
+            + "\"secondlines\":\"3\",\"numberOfTaps\":\"0\",\"numberOfBreakers\":\"2\"}";
+
+    static final String BOUNDARY = "----cape-load-test-boundary";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final Map<String, String> options;
+    private final int concurrency;
+    private final int requests;
+    private final int warmup;
+    private final int buses;
+    private final int secondLines;
+    private final int rows;
+    private final int distinct;
+
+    private UploadLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.concurrency = intOption("concurrency", 4);
+        this.requests = intOption("requests", 200);
+        this.warmup = intOption("warmup", 20);
+        this.buses = intOption("buses", 12);
+        this.secondLines = intOption("second-lines", 8);
+        this.rows = intOption("rows", 500);
+        this.distinct = intOption("distinct", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got '" + args[i] + "'");
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new UploadLoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        AppProcess app = null;
+        String url = options.get("url");
+        if (url == null) {
+            File log = new File(System.getProperty("java.io.tmpdir"), "cape-load-test-app.log");
+            app = AppProcess.start(options.getOrDefault("app-jvm", "-Xmx1g"), options.getOrDefault("app-args", ""), log);
+            url = app.url();
+            System.out.println("Started app at " + url + ", log in " + log);
+        }
+        try {
+            AppProcess.awaitHealthy(http, url, app == null ? null : app.process(), 500);
+            System.out.printf(Locale.ROOT, "Target %s: %d requests (+%d warmup) at concurrency %d, "
+                            + "CSVs of %d rows, %d buses, %d second lines, %s%n",
+                    url, requests, warmup, concurrency, rows, buses, secondLines,
+                    distinct == 0 ? "all distinct" : distinct + " distinct");
+
+            drive(url, warmup, 1_000_000, null);
+            ServerStats before = ServerStats.read(http, url);
+            Result result = new Result(requests);
+            long t0 = System.nanoTime();
+            drive(url, requests, 0, result);
+            long elapsed = System.nanoTime() - t0;
+            ServerStats after = ServerStats.read(http, url);
+
+            report(result, elapsed, before, after);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    /**
+     * Send count uploads from concurrency workers; seedBase keeps warmup
+     * inputs apart from measured ones. Latencies go to result when given.
+     */
+    private void drive(String url, int count, int seedBase, Result result) throws InterruptedException {
+        if (count == 0) {
+            return;
+        }
+        // Bodies are built up front so the client does no CSV work while measuring
+        int bodies = (distinct == 0) ? count : Math.min(distinct, count);
+        byte[][] payloads = new byte[bodies][];
+        for (int i = 0; i < bodies; i++) {
+            payloads[i] = multipart(SyntheticCapeCsv.generate(rows, buses, secondLines, seedBase + i));
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            workers.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/upload"))
+                            .timeout(Duration.ofMinutes(5))
+                            .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(payloads[i % bodies]))
+                            .build();
+                    long start = System.nanoTime();
+                    int status;
+                    long bytes = 0;
+                    try {
+                        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        status = response.statusCode();
+                        bytes = response.body().length;
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    if (result != null) {
+                        result.add(System.nanoTime() - start, status, bytes);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.DAYS);
+    }
+
+    static byte[] multipart(String csv) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(csv.length() + 1024);
+        String head = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"formData\"\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + FORM_DATA + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"csvFile\"; filename=\"cape.csv\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n";
+        out.writeBytes(head.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(csv.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private void report(Result result, long elapsedNanos, ServerStats before, ServerStats after) {
+        long[] latencies = result.sortedLatencies();
+        int ok = result.statuses.getOrDefault(200, new LongAdder()).intValue();
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Requests      %d in %.1f s, %.2f req/s (%d OK)%n",
+                latencies.length, seconds, latencies.length / seconds, ok);
+        System.out.println("Status        " + new TreeMap<>(result.statuses));
+        System.out.printf(Locale.ROOT, "Latency ms    p50 %.1f  p90 %.1f  p99 %.1f  max %.1f  mean %.1f%n",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6,
+                Arrays.stream(latencies).average().orElse(0) / 1e6);
+        System.out.printf(Locale.ROOT, "Response      %.1f KB average%n",
+                ok == 0 ? 0 : result.bytes.sum() / 1024.0 / latencies.length);
+
+        if (before == null || after == null) {
+            System.out.println("Server        no JVM metrics (actuator /metrics not reachable)");
+            return;
+        }
+        int per = Math.max(latencies.length, 1);
+        System.out.printf(Locale.ROOT, "Server heap   %.1f MB allocated per request, %.0f MB used at end%n",
+                (after.allocatedBytes - before.allocatedBytes) / 1048576.0 / per, after.heapUsedBytes / 1048576.0);
+        System.out.printf(Locale.ROOT, "Server GC     %.2f pauses and %.1f ms pause time per request%n",
+                (after.gcPauses - before.gcPauses) / (double) per, (after.gcPauseSeconds - before.gcPauseSeconds) * 1000 / per);
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Measured latencies and outcomes, filled concurrently by the workers
+     */
+    private static final class Result {
+
+        private final long[] latencies;
+        private final AtomicInteger count = new AtomicInteger();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder bytes = new LongAdder();
+
+        Result(int capacity) {
+            this.latencies = new long[capacity];
+        }
+
+        void add(long nanos, int status, long responseBytes) {
+            latencies[count.getAndIncrement()] = nanos;
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            bytes.add(responseBytes);
+        }
+
+        long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, count.get());
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * The server JVM's cumulative allocation and GC figures from Actuator.
+     * jvm.gc.memory.allocated advances at young collections, so per-request
+     * allocation is an estimate that gets better with more requests.
+     */
+    private static final class ServerStats {
+
+        private final double allocatedBytes;
+        private final double gcPauses;
+        private final double gcPauseSeconds;
+        private final double heapUsedBytes;
+
+        private ServerStats(double allocatedBytes, double gcPauses, double gcPauseSeconds, double heapUsedBytes) {
+            this.allocatedBytes = allocatedBytes;
+            this.gcPauses = gcPauses;
+            this.gcPauseSeconds = gcPauseSeconds;
+            this.heapUsedBytes = heapUsedBytes;
+        }
+
+        static ServerStats read(HttpClient http, String url) {
+            try {
+                JsonNode allocated = metric(http, url, "jvm.gc.memory.allocated");
+                JsonNode pauses = metric(http, url, "jvm.gc.pause");
+                JsonNode heap = metric(http, url, "jvm.memory.used?tag=area:heap");
+                return new ServerStats(statistic(allocated, "COUNT"), statistic(pauses, "COUNT"),
+                        statistic(pauses, "TOTAL_TIME"), statistic(heap, "VALUE"));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private static JsonNode metric(HttpClient http, String url, String name) throws Exception {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/actuator/metrics/" + name)).build();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 404) {
+                // No collection has happened yet, so the meter is not registered
+                return JSON.createObjectNode();
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException(name + ": HTTP " + response.statusCode());
+            }
+            return JSON.readTree(response.body());
+        }
+
+        private static double statistic(JsonNode metric, String statistic) {
+            for (JsonNode m : metric.path("measurements")) {
+                if (statistic.equals(m.path("statistic").asText())) {
+                    return m.path("value").asDouble();
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.template;
+
+import com.example.demo.BenchmarkPipeline;
+import com.example.demo.mapping.MappedField;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merged-cell resolution for the mapped cells of the real template: the
+ * {@link MergedRegionIndex} lookup against a linear scan of the sheet's merged
+ * regions, and the recorded writes as the mapping makes them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergedCellWriteBenchmark {
+
+    private static final String[] SHEETS = {"1) Data Entry", "4) Fault Analysis"};
+
+    private CachedTemplate template;
+    private TemplateSheet[] targetSheets;
+    private String[] targetCells;
+    private int[] rows;
+    private int[] cols;
+    private List<List<CellRangeAddress>> regions;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkPipeline pipeline = new BenchmarkPipeline(GenerationMode.POI);
+        template = pipeline.templateCache.get();
+
+        List<MappedField> fields = new ArrayList<>();
+        for (String sheet : SHEETS) {
+            fields.addAll(pipeline.cellMappings.fieldsFor(sheet));
+        }
+        targetSheets = new TemplateSheet[fields.size()];
+        targetCells = new String[fields.size()];
+        rows = new int[fields.size()];
+        cols = new int[fields.size()];
+        regions = new ArrayList<>();
+        try (XSSFWorkbook wb = pipeline.templateCache.openWorkbook(template)) {
+            for (int i = 0; i < fields.size(); i++) {
+                MappedField f = fields.get(i);
+                CellAddress ca = new CellAddress(f.getCell());
+                targetSheets[i] = template.getSheet(f.getSheet());
+                targetCells[i] = f.getCell();
+                rows[i] = ca.getRow();
+                cols[i] = ca.getColumn();
+                regions.add(wb.getSheet(f.getSheet()).getMergedRegions());
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexFind(Blackhole bh) {
+        for (int i = 0; i < rows.length; i++) {
+            bh.consume(targetSheets[i].getMergedRegions().find(rows[i], cols[i]));
+        }
+    }
+
+    @Benchmark
+    public void scanFind(Blackhole bh) {
+        for (int i = 0; i < rows.length; i++) {
+            int hit = -1;
+            List<CellRangeAddress> merged = regions.get(i);
+            for (int m = 0; m < merged.size(); m++) {
+                if (merged.get(m).isInRange(rows[i], cols[i])) {
+                    hit = m;
+                    break;
+                }
+            }
+            bh.consume(hit);
+        }
+    }
+
+    @Benchmark
+    public WorkbookPatch patchWrites() {
+        WorkbookPatch patch = new WorkbookPatch(template);
+        for (int i = 0; i < targetCells.length; i++) {
+            patch.write(targetSheets[i], targetCells[i], "1234.5");
+        }
+        return patch;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.template;
+
+import com.example.demo.BenchmarkPipeline;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VML repair of the original (unsanitized) template; open is the cost of
+ * opening the package alone, to subtract from sanitize
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SanitizeVmlBenchmark {
+
+    private byte[] original;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream in = new DefaultResourceLoader().getResource(BenchmarkPipeline.TEMPLATE).getInputStream()) {
+            original = in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public boolean sanitize() throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(original))) {
+            return TemplateCache.sanitizeVml(pkg);
+        }
+    }
+
+    @Benchmark
+    public int open() throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(original))) {
+            return pkg.getParts().size();
+        }
+    }
+}
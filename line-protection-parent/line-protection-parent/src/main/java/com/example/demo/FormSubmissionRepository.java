@@ -1,60 +1,101 @@
 package com.example.demo;
 
 import com.example.demo.entity.FormSubmission;
+import com.example.demo.entity.StoredWorkbook;
+import com.example.demo.entity.SubmissionSummary;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for FormSubmission entity
  * Provides database access methods for form submissions
+ *
+ * Nothing here returns an unbounded list: searches return a Slice (no count
+ * query), exports a Stream, and the history API pages by keyset through
+ * {@link JpaSpecificationExecutor} (see SubmissionHistoryService). List
+ * queries return {@link SubmissionSummary}, so they never read the form
+ * data JSON.
  */
 @Repository
-public interface FormSubmissionRepository extends JpaRepository<FormSubmission, Long> {
-    
+public interface FormSubmissionRepository extends JpaRepository<FormSubmission, Long>,
+        JpaSpecificationExecutor<FormSubmission> {
+
     /**
-     * Find submissions by relay location
+     * Find submissions by relay location (substring, trigram index on PostgreSQL)
      */
-    List<FormSubmission> findByRelayLocationContainingIgnoreCase(String relayLocation);
-    
+    Slice<SubmissionSummary> findByRelayLocationContainingIgnoreCase(String relayLocation, Pageable pageable);
+
     /**
-     * Find submissions by line number
+     * Find submissions by line number (substring, trigram index on PostgreSQL)
      */
-    List<FormSubmission> findByLineNumberContainingIgnoreCase(String lineNumber);
-    
+    Slice<SubmissionSummary> findByLineNumberContainingIgnoreCase(String lineNumber, Pageable pageable);
+
     /**
      * Find submissions by status
      */
-    List<FormSubmission> findByStatus(String status);
-    
+    Slice<SubmissionSummary> findByStatus(String status, Pageable pageable);
+
     /**
-     * Find submissions between dates
+     * Stream submissions between dates, oldest first; must be consumed
+     * inside a transaction and closed
      */
-    List<FormSubmission> findByUploadedAtBetween(LocalDateTime start, LocalDateTime end);
-    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<FormSubmission> findByUploadedAtBetweenOrderByUploadedAtAscIdAsc(LocalDateTime start, LocalDateTime end);
+
     /**
      * Find the most recent submissions
      */
-    List<FormSubmission> findTop10ByOrderByUploadedAtDesc();
-    
+    List<SubmissionSummary> findTop10ByOrderByUploadedAtDescIdDesc();
+
+    /**
+     * Latest submission for a relay location and line number
+     */
+    Optional<FormSubmission> findFirstByRelayLocationAndLineNumberOrderByUploadedAtDesc(String relayLocation, String lineNumber);
+
     /**
-     * Find by relay location and line number
+     * Stored workbook delta of a submission, without loading the rest of the row
      */
-    Optional<FormSubmission> findByRelayLocationAndLineNumber(String relayLocation, String lineNumber);
-    
+    Optional<StoredWorkbook> findWorkbookById(Long id);
+
     /**
-     * Count submissions by status
+     * Count submissions by status; scans every row of that status, so
+     * dashboards read StatusCounters (/stats) instead
      */
     @Query("SELECT COUNT(f) FROM FormSubmission f WHERE f.status = :status")
     long countByStatus(@Param("status") String status);
-    
+
+    /**
+     * Rows of (status, hour of upload, count) for uploads in [from, to), to
+     * reconcile StatusCounters
+     */
+    @Query(value = "SELECT status, date_trunc('hour', uploaded_at), COUNT(*) FROM form_submissions"
+            + " WHERE uploaded_at >= :from AND uploaded_at < :to"
+            + " GROUP BY status, date_trunc('hour', uploaded_at)", nativeQuery = true)
+    List<Object[]> countByStatusAndHour(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
     /**
-     * Delete old submissions (older than specified date)
+     * Delete up to limit of the oldest submissions uploaded before cutoff in
+     * one statement and its own transaction, so row locks are held for one
+     * bounded chunk; returns the rows deleted (less than limit when done)
      */
-    void deleteByUploadedAtBefore(LocalDateTime date);
-}
\ No newline at end of file
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM form_submissions WHERE id IN (SELECT id FROM form_submissions"
+            + " WHERE uploaded_at < :cutoff ORDER BY uploaded_at LIMIT :limit)", nativeQuery = true)
+    int deleteChunkUploadedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
@@ -0,0 +1,13 @@
+package com.example.demo;
+
+import com.example.demo.entity.WorkbookTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Template versions kept for rebuilding stored workbooks, by version (the
+ * SHA-256 of the sanitized package)
+ */
+@Repository
+public interface WorkbookTemplateRepository extends JpaRepository<WorkbookTemplate, String> {
+}
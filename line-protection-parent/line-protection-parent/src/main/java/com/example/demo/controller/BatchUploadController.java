@@ -0,0 +1,171 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.BatchGenerationService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Generates calculation sheets for many lines in one request. Accepts either
+ * repeated formData/csvFile part pairs, or an "archive" ZIP holding the CAPE
+ * CSVs and a manifest.json:
+ *
+ * <pre>
+ * [ { "csv": "line-5586.csv", "name": "Line 5586", "formData": { "relayLocation": "..." } }, ... ]
+ * </pre>
+ *
+ * The response is a ZIP of the generated .xlsm files plus batch-status.json
+ * with the outcome of every item.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:8080")
+public class BatchUploadController {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchUploadController.class);
+
+    private static final String MANIFEST = "manifest.json";
+
+    private final BatchGenerationService batchService;
+    private final ObjectMapper objectMapper;
+    private final long maxCsvBytes;
+
+    public BatchUploadController(BatchGenerationService batchService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${batch.max-csv-bytes:20971520}") long maxCsvBytes) {
+        this.batchService = batchService;
+        this.objectMapper = objectMapper;
+        this.maxCsvBytes = maxCsvBytes;
+    }
+
+    @PostMapping(path = "/upload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> uploadBatch(MultipartHttpServletRequest request) throws IOException {
+        MultipartFile archive = request.getFile("archive");
+        List<BatchGenerationService.Item> items = (archive != null)
+                ? fromArchive(archive)
+                : fromParts(request);
+
+        if (items.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch has no items");
+        }
+        if (items.size() > batchService.getMaxItems()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch has " + items.size() + " items, at most " + batchService.getMaxItems() + " allowed");
+        }
+        log.info("Batch upload accepted: {} items", items.size());
+
+        StreamingResponseBody body = out -> batchService.run(items, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Line_Protection_Calculation_Sheets.zip")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    /**
+     * Repeated formData / csvFile parts, paired in order
+     */
+    private List<BatchGenerationService.Item> fromParts(MultipartHttpServletRequest request) throws IOException {
+        String[] forms = request.getParameterValues("formData");
+        List<MultipartFile> csvFiles = request.getFiles("csvFile");
+        int formCount = forms == null ? 0 : forms.length;
+        if (formCount != csvFiles.size()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Got " + formCount + " formData parts but " + csvFiles.size() + " csvFile parts");
+        }
+
+        List<BatchGenerationService.Item> items = new ArrayList<>(csvFiles.size());
+        for (int i = 0; i < csvFiles.size(); i++) {
+            MultipartFile csv = csvFiles.get(i);
+            String name = csv.getOriginalFilename() != null ? csv.getOriginalFilename() : "item-" + (i + 1);
+            // Read in place when the batch runs, spilled to disk when large
+            items.add(new BatchGenerationService.Item(name, parseForm(forms[i], name), csv));
+        }
+        return items;
+    }
+
+    /**
+     * ZIP of CAPE CSVs described by manifest.json
+     */
+    private List<BatchGenerationService.Item> fromArchive(MultipartFile archive) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry e;
+            while ((e = zip.getNextEntry()) != null) {
+                if (!e.isDirectory()) {
+                    if (entries.size() > batchService.getMaxItems()) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Archive has too many entries");
+                    }
+                    entries.put(e.getName(), readEntry(zip, e.getName()));
+                }
+            }
+        }
+
+        byte[] manifest = entries.get(MANIFEST);
+        if (manifest == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Archive has no " + MANIFEST);
+        }
+        JsonNode list = objectMapper.readTree(manifest);
+        if (!list.isArray()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, MANIFEST + " must be a JSON array");
+        }
+
+        List<BatchGenerationService.Item> items = new ArrayList<>(list.size());
+        for (JsonNode entry : list) {
+            String csvName = entry.path("csv").asText("");
+            byte[] csv = entries.get(csvName);
+            if (csv == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, MANIFEST + " refers to missing CSV '" + csvName + "'");
+            }
+            String name = entry.path("name").asText(csvName);
+            Map<String, String> formData = objectMapper.convertValue(entry.path("formData"), new TypeReference<>() {});
+            items.add(new BatchGenerationService.Item(name, formData != null ? formData : Map.of(), new ByteArrayResource(csv)));
+        }
+        return items;
+    }
+
+    private byte[] readEntry(InputStream in, String name) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) > 0) {
+            if (buf.size() + n > maxCsvBytes) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Archive entry '" + name + "' is larger than " + maxCsvBytes + " bytes");
+            }
+            buf.write(chunk, 0, n);
+        }
+        return buf.toByteArray();
+    }
+
+    private Map<String, String> parseForm(String json, String name) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid formData JSON for '" + name + "'", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.CalculationService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The fault-study values of a CAPE export as JSON, without generating a
+ * workbook. Takes the same csvFile (and optional formData) parts as /upload,
+ * or the CSV itself as a text/csv body.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:8080")
+public class CalculationController {
+
+    private final CalculationService calculationService;
+    private final ObjectMapper objectMapper;
+
+    public CalculationController(CalculationService calculationService, ObjectMapper objectMapper) {
+        this.calculationService = calculationService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(path = "/calculate", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> calculate(
+            @RequestPart(name = "formData", required = false) String formDataJson,
+            @RequestPart("csvFile") MultipartFile csvFile
+    ) throws Exception {
+        try (InputStream in = csvFile.getInputStream()) {
+            return calculate(parseFormData(formDataJson), in);
+        }
+    }
+
+    @PostMapping(path = "/calculate", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<Map<String, Object>> calculateRaw(@RequestBody byte[] csv) throws Exception {
+        return calculate(Map.of(), new ByteArrayInputStream(csv));
+    }
+
+    private ResponseEntity<Map<String, Object>> calculate(Map<String, String> formData, InputStream csv) throws Exception {
+        try {
+            return ResponseEntity.ok(calculationService.calculate(formData, csv));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private Map<String, String> parseFormData(String json) {
+        if (json == null || json.isBlank()) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid formData JSON", e);
+        }
+    }
+}
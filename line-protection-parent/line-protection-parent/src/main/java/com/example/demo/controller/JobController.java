@@ -0,0 +1,109 @@
+package com.example.demo.controller;
+
+import com.example.demo.entity.FormSubmission;
+import com.example.demo.service.JobService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous generation: POST /jobs answers at once with a job id, the
+ * client polls GET /jobs/{id} and downloads GET /jobs/{id}/file once the
+ * status is SUCCESS.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:8080")
+public class JobController {
+
+    private final JobService jobService;
+    private final ObjectMapper objectMapper;
+
+    public JobController(JobService jobService, ObjectMapper objectMapper) {
+        this.jobService = jobService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(path = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> submit(
+            @RequestPart("formData") String formDataJson,
+            @RequestPart("csvFile") MultipartFile csvFile
+    ) throws IOException {
+        Map<String, String> formData;
+        try {
+            formData = objectMapper.readValue(formDataJson, new TypeReference<>() {});
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid formData JSON", e);
+        }
+
+        FormSubmission job;
+        try {
+            job = jobService.submit(formDataJson, formData, csvFile.getOriginalFilename(), csvFile);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many jobs queued, retry later");
+        }
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/jobs/" + job.getId())
+                .body(describe(job));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable long id) {
+        return ResponseEntity.ok(describe(find(id)));
+    }
+
+    @GetMapping("/jobs/{id}/file")
+    public ResponseEntity<FileSystemResource> file(@PathVariable long id) {
+        FormSubmission job = find(id);
+        if (!JobService.SUCCESS.equals(job.getStatus())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + id + " is " + job.getStatus());
+        }
+        Path path = jobService.resultPath(job)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Submission " + id + " has no result file"));
+        if (!Files.exists(path)) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Result of job " + id + " has expired, see /submissions/" + id + "/workbook");
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Updated_Line_Protection_Calculation_Sheet.xlsm")
+                .contentType(MediaType.parseMediaType("application/vnd.ms-excel.sheet.macroEnabled.12"))
+                .body(new FileSystemResource(path));
+    }
+
+    private FormSubmission find(long id) {
+        return jobService.find(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No job " + id));
+    }
+
+    private Map<String, Object> describe(FormSubmission job) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", job.getId());
+        body.put("status", job.getStatus());
+        body.put("uploadedAt", job.getUploadedAt().toString());
+        if (JobService.SUCCESS.equals(job.getStatus()) && job.getGeneratedFileName() != null) {
+            body.put("file", "/jobs/" + job.getId() + "/file");
+            jobService.settings(job).ifPresent(settings -> body.put("settings", settings));
+        }
+        if (job.getErrorMessage() != null) {
+            body.put("error", job.getErrorMessage());
+        }
+        return body;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.StatusCounters;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dashboard counts: GET /stats returns submissions by status in total and
+ * for each of the last hours (default 24, at most a week), from the
+ * in-memory {@link StatusCounters}; it never queries form_submissions.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:8080")
+public class StatsController {
+
+    private static final int MAX_HOURS = 168;
+
+    private final StatusCounters counters;
+
+    public StatsController(StatusCounters counters) {
+        this.counters = counters;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats(@RequestParam(defaultValue = "24") int hours) {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        counters.lastHours(Math.max(1, Math.min(hours, MAX_HOURS))).forEach((start, counts) -> {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("hour", start.toString());
+            bucket.put("counts", counts);
+            buckets.add(bucket);
+        });
+
+        Instant reconciledAt = counters.getReconciledAt();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("totals", counters.totals());
+        body.put("hours", buckets);
+        body.put("reconciledAt", reconciledAt != null ? reconciledAt.toString() : null);
+        return ResponseEntity.ok(body);
+    }
+}
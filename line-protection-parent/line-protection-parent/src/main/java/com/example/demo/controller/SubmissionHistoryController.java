@@ -0,0 +1,113 @@
+package com.example.demo.controller;
+
+import com.example.demo.entity.SubmissionSummary;
+import com.example.demo.service.SubmissionHistoryService;
+import com.example.demo.service.WorkbookArchive;
+import org.springframework.data.domain.Window;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Submission history: GET /submissions returns the newest submissions
+ * matching the filters, and a next cursor to pass back as ?cursor= for the
+ * following page (null on the last one); GET /submissions/recent the ten
+ * latest. Both read summary columns only. GET /submissions/{id}/workbook
+ * rebuilds a submission's workbook from its stored delta.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:8080")
+public class SubmissionHistoryController {
+
+    private final SubmissionHistoryService history;
+    private final WorkbookArchive archive;
+
+    public SubmissionHistoryController(SubmissionHistoryService history, WorkbookArchive archive) {
+        this.history = history;
+        this.archive = archive;
+    }
+
+    @GetMapping("/submissions")
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam(required = false) String relayLocation,
+            @RequestParam(required = false) String lineNumber,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        SubmissionHistoryService.Filter filter = new SubmissionHistoryService.Filter(
+                blankToNull(relayLocation), blankToNull(lineNumber), blankToNull(status), from, to);
+        Window<SubmissionSummary> page;
+        try {
+            page = history.search(filter, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("items", describe(page.getContent()));
+        body.put("next", history.nextCursor(page));
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/submissions/recent")
+    public ResponseEntity<List<Map<String, Object>>> recent() {
+        return ResponseEntity.ok(describe(history.recent()));
+    }
+
+    @GetMapping("/submissions/{id}/workbook")
+    public ResponseEntity<byte[]> workbook(@PathVariable long id) throws Exception {
+        byte[] workbook;
+        try {
+            workbook = archive.workbook(id).orElseThrow(() -> new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "No stored workbook for submission " + id));
+        } catch (WorkbookArchive.StaleTemplateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=Updated_Line_Protection_Calculation_Sheet.xlsm")
+                .contentType(MediaType.parseMediaType("application/vnd.ms-excel.sheet.macroEnabled.12"))
+                .body(workbook);
+    }
+
+    private static List<Map<String, Object>> describe(List<SubmissionSummary> summaries) {
+        List<Map<String, Object>> items = new ArrayList<>(summaries.size());
+        for (SubmissionSummary s : summaries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", s.id());
+            item.put("relayLocation", s.relayLocation());
+            item.put("lineNumber", s.lineNumber());
+            item.put("remoteLocation", s.remoteLocation());
+            item.put("status", s.status());
+            item.put("uploadedAt", s.uploadedAt().toString());
+            if (s.generatedFileName() != null) {
+                item.put("file", "/jobs/" + s.id() + "/file");
+            }
+            if (s.templateVersion() != null) {
+                item.put("workbook", "/submissions/" + s.id() + "/workbook");
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static String blankToNull(String s) {
+        return (s == null || s.isBlank()) ? null : s;
+    }
+}
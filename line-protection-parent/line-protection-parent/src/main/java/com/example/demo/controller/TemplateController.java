@@ -0,0 +1,28 @@
+package com.example.demo.controller;
+
+import com.example.demo.template.TemplateCache;
+import com.example.demo.template.TemplateEndpoint;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Inspect the cached calculation sheet template; reloading it is the actuator
+ * template endpoint's job (see {@link TemplateEndpoint})
+ */
+@RestController
+public class TemplateController {
+
+    private final TemplateCache templateCache;
+
+    public TemplateController(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    @GetMapping("/template")
+    public ResponseEntity<Map<String, Object>> current() throws Exception {
+        return ResponseEntity.ok(TemplateEndpoint.describe(templateCache.get()));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budgets for request bodies, checked before the body is read. A
+ * request declaring more than the per-request maximum gets 413; one that
+ * would take the bytes held by requests in flight above the global budget
+ * gets 429 with Retry-After. A body of unknown length (chunked) is charged
+ * the per-request maximum. Bytes are returned when the response completes,
+ * including a streamed (async) one.
+ */
+@Component
+public class UploadBudgetFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadBudgetFilter.class);
+
+    private final long maxRequestBytes;
+    private final long inFlightMaxBytes;
+    private final int retryAfterSeconds;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private final Counter tooLarge;
+    private final Counter busy;
+
+    public UploadBudgetFilter(MeterRegistry registry,
+                              @Value("${upload.max-request-size:50MB}") DataSize maxRequestSize,
+                              @Value("${upload.in-flight-max:256MB}") DataSize inFlightMax,
+                              @Value("${upload.retry-after-seconds:5}") int retryAfterSeconds) {
+        this.maxRequestBytes = maxRequestSize.toBytes();
+        this.inFlightMaxBytes = Math.max(inFlightMax.toBytes(), maxRequestBytes);
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        this.tooLarge = Counter.builder("upload.budget.rejected").tag("reason", "too-large")
+                .description("Requests refused because the body exceeds the per-request maximum")
+                .register(registry);
+        this.busy = Counter.builder("upload.budget.rejected").tag("reason", "busy")
+                .description("Requests refused because the in-flight byte budget is taken")
+                .register(registry);
+        Gauge.builder("upload.budget.in-flight", inFlight, AtomicLong::get)
+                .description("Request body bytes held by requests in progress")
+                .baseUnit("bytes")
+                .register(registry);
+
+        log.info("Upload budget: {} per request, {} in flight", maxRequestSize, DataSize.ofBytes(this.inFlightMaxBytes));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long declared = request.getContentLengthLong();
+        if (declared == 0 || (declared < 0 && request.getHeader(HttpHeaders.TRANSFER_ENCODING) == null)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (declared > maxRequestBytes) {
+            tooLarge.increment();
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "Request body of " + declared + " bytes exceeds the maximum of " + maxRequestBytes);
+            return;
+        }
+
+        long charge = (declared > 0) ? declared : maxRequestBytes;
+        if (!reserve(charge)) {
+            busy.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, Integer.toString(retryAfterSeconds));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many uploads in progress, retry later");
+            return;
+        }
+
+        AtomicBoolean held = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (held.compareAndSet(true, false)) {
+                inFlight.addAndGet(-charge);
+            }
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            long current = inFlight.get();
+            if (current + bytes > inFlightMaxBytes) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes once a streamed response has finished, however it ends
+     */
+    private static final class ReleaseOnComplete implements AsyncListener {
+
+        private final Runnable release;
+
+        ReleaseOnComplete(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Re-dispatched; keep listening on the new cycle
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
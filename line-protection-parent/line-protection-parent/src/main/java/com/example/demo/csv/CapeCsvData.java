@@ -0,0 +1,92 @@
+package com.example.demo.csv;
+
+import com.example.demo.mapping.CsvCellLookup;
+import com.example.demo.model.ImpedanceData;
+import com.example.demo.model.InfeedData;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything the generator needs from one CAPE fault-study export, produced in
+ * a single pass by {@link CapeCsvParser}. Only the leading rows read by the
+ * cell mapping are kept; the infeed and impedance sections are parsed as they
+ * stream past.
+ */
+public class CapeCsvData implements CsvCellLookup {
+
+    private final String[][] leadingRows;
+    private int leadingCount;
+
+    private int rowCount;
+    private int infeedStartRow = -1;
+    private int impedanceStartRow = -1;
+
+    private final Map<Integer, InfeedData> infeed = new HashMap<>();
+    private final ImpedanceData impedance = new ImpedanceData();
+
+    CapeCsvData(int keepRows) {
+        this.leadingRows = new String[Math.max(keepRows, 0)][];
+    }
+
+    void keep(int row, String[] fields) {
+        if (row < leadingRows.length) {
+            leadingRows[row] = fields;
+            leadingCount = row + 1;
+        }
+    }
+
+    /**
+     * Cell of one of the kept leading rows, trimmed with non-breaking spaces
+     * folded, or "" when it does not exist
+     */
+    @Override
+    public String get(int row, int col) {
+        if (row < 0 || row >= leadingCount) return "";
+        return CapeCsvParser.cell(leadingRows[row], col);
+    }
+
+    /**
+     * Total number of CSV records read
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Row of the "INFEED TAB" header, or -1 when absent
+     */
+    public int getInfeedStartRow() {
+        return infeedStartRow;
+    }
+
+    void setInfeedStartRow(int infeedStartRow) {
+        this.infeedStartRow = infeedStartRow;
+    }
+
+    /**
+     * Row of the "APA IMPEDANCES TAB" header, or -1 when absent
+     */
+    public int getImpedanceStartRow() {
+        return impedanceStartRow;
+    }
+
+    void setImpedanceStartRow(int impedanceStartRow) {
+        this.impedanceStartRow = impedanceStartRow;
+    }
+
+    /**
+     * Infeed per bus number, 1-based, at most 12 buses
+     */
+    public Map<Integer, InfeedData> getInfeed() {
+        return infeed;
+    }
+
+    public ImpedanceData getImpedance() {
+        return impedance;
+    }
+}
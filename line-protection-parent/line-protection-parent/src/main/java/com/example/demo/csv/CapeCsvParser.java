@@ -0,0 +1,263 @@
+package com.example.demo.csv;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import com.example.demo.model.InfeedData;
+import com.example.demo.model.LineImpedance;
+import com.example.demo.model.Measurements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Single-pass, event-driven parser for CAPE fault-study exports. Rows are read
+ * one at a time; section headers and block markers are recognised as they
+ * stream in and the rows following a marker are consumed as its data, so the
+ * file is never materialised and no row is joined or upper-cased.
+ *
+ * <pre>
+ *   INFEED TAB
+ *     WHEN APPLYING BUS FAULT AT:        + magnitude row, angle row   (col 2)
+ *   APA IMPEDANCES TAB
+ *     FIRST LINE IMPEDENCE AT BUS:       + R1/X1 row, R0/X0 row, miles row (cols 2, 3)
+ *     SECOND LINE IMPEDENCES FOR LINE:   + same three rows, CKT id from the marker
+ * </pre>
+ *
+ * The infeed section ends at the APA IMPEDANCES TAB header, which may cut an
+ * infeed block short; impedance blocks read their rows regardless of content.
+ */
+@Component
+public class CapeCsvParser {
+
+    private static final Logger log = LoggerFactory.getLogger(CapeCsvParser.class);
+
+    static final String INFEED_HEADER = "INFEED TAB";
+    static final String IMPEDANCE_HEADER = "APA IMPEDANCES TAB";
+    static final String INFEED_MARKER = "WHEN APPLYING BUS FAULT AT:";
+    static final String FIRST_LINE_MARKER = "FIRST LINE IMPEDENCE AT BUS:";
+    static final String SECOND_LINE_MARKER = "SECOND LINE IMPEDENCES FOR LINE:";
+
+    private static final int MAX_INFEED_BUSES = 12;
+
+    /**
+     * Parse a CAPE export, keeping the first keepRows rows for cell lookups
+     */
+    public CapeCsvData parse(Reader in, int keepRows) throws IOException {
+        State state = new State(new CapeCsvData(keepRows));
+        try (CSVReader reader = new CSVReader(in)) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                state.accept(row);
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Malformed CSV at line " + e.getLineNumber(), e);
+        }
+        return state.finish();
+    }
+
+    /**
+     * Per-parse state machine
+     */
+    private static final class State {
+
+        private static final int SEARCHING = 0;
+        private static final int INFEED = 1;
+        private static final int IMPEDANCE = 2;
+
+        private static final int NONE = 0;
+        private static final int INFEED_BLOCK = 1;
+        private static final int FIRST_LINE_BLOCK = 2;
+        private static final int SECOND_LINE_BLOCK = 3;
+
+        private final CapeCsvData data;
+
+        private int row = -1;
+        private int section = SEARCHING;
+        private int busCounter = 1;
+
+        // Block whose data rows are still arriving
+        private int pendingKind = NONE;
+        private int pendingRows;
+        private int pendingOffset;
+        private final double[] pendingValues = new double[5];
+        private String pendingCkt;
+
+        State(CapeCsvData data) {
+            this.data = data;
+        }
+
+        void accept(String[] fields) {
+            row++;
+            data.keep(row, fields);
+
+            boolean infeedHeader = data.getInfeedStartRow() == -1 && containsIgnoreCase(fields, INFEED_HEADER);
+            boolean impedanceHeader = data.getImpedanceStartRow() == -1 && containsIgnoreCase(fields, IMPEDANCE_HEADER);
+            if (infeedHeader) {
+                data.setInfeedStartRow(row);
+            }
+
+            if (impedanceHeader) {
+                // Closes the infeed section; an unfinished bus keeps its defaults
+                clearPending();
+                data.setImpedanceStartRow(row);
+                section = IMPEDANCE;
+                scanImpedance(fields);
+                return;
+            }
+
+            if (pendingRows > 0) {
+                consumePending(fields);
+                return;
+            }
+
+            if (infeedHeader && section == SEARCHING) {
+                section = INFEED;
+            }
+            if (section == INFEED) {
+                scanInfeed(fields);
+            } else if (section == IMPEDANCE) {
+                scanImpedance(fields);
+            }
+        }
+
+        private void scanInfeed(String[] fields) {
+            if (busCounter > MAX_INFEED_BUSES || !containsIgnoreCase(fields, INFEED_MARKER)) {
+                return;
+            }
+            startPending(INFEED_BLOCK, 2);
+        }
+
+        private void scanImpedance(String[] fields) {
+            if (containsIgnoreCase(fields, FIRST_LINE_MARKER)) {
+                startPending(FIRST_LINE_BLOCK, 3);
+            } else if (containsIgnoreCase(fields, SECOND_LINE_MARKER)) {
+                startPending(SECOND_LINE_BLOCK, 3);
+                pendingCkt = cktNumber(fields);
+                log.debug("Parsed CAPE CKT number for second line {}: {}",
+                        data.getImpedance().getSecondLines().size() + 1, pendingCkt);
+            }
+        }
+
+        private void startPending(int kind, int rows) {
+            pendingKind = kind;
+            pendingRows = rows;
+            pendingOffset = 0;
+            pendingCkt = "";
+            Arrays.fill(pendingValues, Measurements.MISSING);
+        }
+
+        private void consumePending(String[] fields) {
+            pendingOffset++;
+            pendingRows--;
+
+            if (pendingKind == INFEED_BLOCK) {
+                // Magnitude row, then angle row
+                pendingValues[pendingOffset - 1] = NumberScanner.parse(cell(fields, 2));
+            } else if (pendingOffset < 3) {
+                // R1/X1 row, then R0/X0 row
+                pendingValues[2 * pendingOffset - 2] = NumberScanner.parse(cell(fields, 2));
+                pendingValues[2 * pendingOffset - 1] = NumberScanner.parse(cell(fields, 3));
+            } else {
+                pendingValues[4] = NumberScanner.parse(cell(fields, 2));
+            }
+
+            if (pendingRows == 0) {
+                clearPending();
+            }
+        }
+
+        /**
+         * Emit the block being read, with whatever rows it got, and reset
+         */
+        private void clearPending() {
+            double[] v = pendingValues;
+            if (pendingKind == INFEED_BLOCK) {
+                data.getInfeed().put(busCounter, new InfeedData(v[0], v[1]));
+                log.debug("Parsed infeed bus {}: Mag={}, Ang={}", busCounter, v[0], v[1]);
+                busCounter++;
+            } else if (pendingKind == FIRST_LINE_BLOCK || pendingKind == SECOND_LINE_BLOCK) {
+                LineImpedance line = new LineImpedance(v[0], v[1], v[2], v[3], v[4], pendingCkt);
+                if (pendingKind == FIRST_LINE_BLOCK) {
+                    data.getImpedance().setFirstLine(line);
+                } else {
+                    data.getImpedance().addSecondLine(line);
+                }
+                log.debug("Parsed line impedance: R1={}, X1={}, R0={}, X0={}, Miles={}", v[0], v[1], v[2], v[3], v[4]);
+            }
+            pendingKind = NONE;
+            pendingRows = 0;
+            pendingOffset = 0;
+        }
+
+        CapeCsvData finish() {
+            clearPending();
+            data.setRowCount(row + 1);
+            if (data.getInfeedStartRow() == -1) {
+                log.warn("INFEED TAB section not found in CSV");
+            }
+            if (data.getImpedanceStartRow() == -1) {
+                log.warn("APA IMPEDANCES TAB section not found in CSV");
+            }
+            return data;
+        }
+    }
+
+    /**
+     * CKT name from the second-line marker, e.g. "...FOR LINE: 5586-YANDELL-22" gives "YANDELL-22"
+     */
+    private static String cktNumber(String[] fields) {
+        for (String field : fields) {
+            if (field != null && containsIgnoreCase(field, SECOND_LINE_MARKER)) {
+                String label = field.trim();
+                int colonIdx = label.lastIndexOf(':');
+                if (colonIdx >= 0 && colonIdx + 1 < label.length()) {
+                    String fullId = label.substring(colonIdx + 1).trim(); // e.g. "5586-YANDELL-22"
+                    int dashIdx = fullId.indexOf('-');
+                    // cktNumber = everything after the first dash e.g. "YANDELL-22"
+                    return (dashIdx >= 0 && dashIdx + 1 < fullId.length())
+                            ? fullId.substring(dashIdx + 1).trim()
+                            : fullId;
+                }
+                break;
+            }
+        }
+        return "";
+    }
+
+    private static boolean containsIgnoreCase(String[] fields, String needle) {
+        for (String field : fields) {
+            if (field != null && containsIgnoreCase(field, needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Case-insensitive substring test without creating an upper-cased copy
+     */
+    static boolean containsIgnoreCase(String haystack, String needle) {
+        int n = needle.length();
+        int last = haystack.length() - n;
+        for (int i = 0; i <= last; i++) {
+            if (haystack.regionMatches(true, i, needle, 0, n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Trimmed field with non-breaking spaces folded, or "" when absent
+     */
+    static String cell(String[] row, int c) {
+        if (row == null || c < 0 || c >= row.length) return "";
+        String v = row[c];
+        if (v == null) return "";
+        return v.replace('\u00A0',' ').trim();
+    }
+}
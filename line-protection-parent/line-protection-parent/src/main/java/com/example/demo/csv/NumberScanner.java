@@ -0,0 +1,296 @@
+package com.example.demo.csv;
+
+/**
+ * Hand-written scanner for the first numeric literal in a CAPE cell, e.g.
+ * "0.0123 OHMS" or "R1= -1,234.5E-3". Equivalent to searching the cell, with
+ * commas removed, for {@code [-+]?\d*\.?\d+(?:[eE][-+]?\d+)?}, except that an
+ * infinity marker (INF, INFINITE, INFINITY or ∞) anywhere in the cell takes
+ * precedence. Runs without regex, case conversion or intermediate strings.
+ */
+public final class NumberScanner {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Largest digit count whose value is exact in a double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private NumberScanner() {
+    }
+
+    /**
+     * First number in the cell; NaN when there is none, +Infinity when the
+     * cell carries an infinity marker
+     */
+    public static double parse(CharSequence s) {
+        if (s == null) return Double.NaN;
+        if (isInfinite(s)) return Double.POSITIVE_INFINITY;
+
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            long span = match(s, i);
+            if (span >= 0) {
+                return toDouble(s, i, (int) span);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Value of s when the whole of it, surrounding whitespace aside, is a
+     * decimal literal such as "12", "-0.5", ".5e-3" or "7d"; NaN otherwise.
+     * Accepts the decimal forms of {@link Double#parseDouble} without its
+     * NumberFormatException on the common non-numeric case.
+     */
+    public static double parseExact(CharSequence s) {
+        if (s == null) return Double.NaN;
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        if (start == end) return Double.NaN;
+
+        // Java float/double suffix
+        int last = end;
+        char sfx = s.charAt(end - 1);
+        if (sfx == 'd' || sfx == 'D' || sfx == 'f' || sfx == 'F') last--;
+
+        int p = start;
+        if (p < last && (s.charAt(p) == '+' || s.charAt(p) == '-')) p++;
+        int intStart = p;
+        while (p < last && isDigit(s, p)) p++;
+        int intDigits = p - intStart;
+        int fracDigits = 0;
+        if (p < last && s.charAt(p) == '.') {
+            p++;
+            int fracStart = p;
+            while (p < last && isDigit(s, p)) p++;
+            fracDigits = p - fracStart;
+        }
+        if (intDigits + fracDigits == 0) return Double.NaN;
+        if (p < last && (s.charAt(p) == 'e' || s.charAt(p) == 'E')) {
+            p++;
+            if (p < last && (s.charAt(p) == '+' || s.charAt(p) == '-')) p++;
+            int expStart = p;
+            while (p < last && isDigit(s, p)) p++;
+            if (p == expStart) return Double.NaN;
+        }
+        if (p != last) return Double.NaN;
+        return toDouble(s, start, last);
+    }
+
+    /**
+     * First number in the cell as text with commas dropped, "0" for an
+     * infinity marker and "" when there is no number
+     */
+    public static String firstNumber(String s) {
+        if (s == null) return "";
+        if (isInfinite(s)) return "0";
+
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            long span = match(s, i);
+            if (span >= 0) {
+                int end = (int) span;
+                int comma = s.indexOf(',', i);
+                if (comma < 0 || comma >= end) {
+                    return s.substring(i, end);
+                }
+                StringBuilder sb = new StringBuilder(end - i);
+                for (int k = i; k < end; k++) {
+                    if (s.charAt(k) != ',') sb.append(s.charAt(k));
+                }
+                return sb.toString();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Whether the cell mentions INFINITE, INFINITY, a standalone INF (any
+     * case) or ∞. Commas are ignored, as if removed from the cell first.
+     */
+    public static boolean isInfinite(CharSequence s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '∞') return true;
+            if (c == ',' || Character.toUpperCase(c) != 'I') continue;
+
+            // Previous visible char must not be a word char for a standalone INF
+            int prev = skipCommasBack(s, i - 1);
+            int f = skipCommas(s, i + 1);
+            if (!is(s, f, 'N')) continue;
+            f = skipCommas(s, f + 1);
+            if (!is(s, f, 'F')) continue;
+            int after = skipCommas(s, f + 1);
+
+            if (!(prev >= 0 && isWordChar(s.charAt(prev))) && !(after < n && isWordChar(s.charAt(after)))) {
+                return true;
+            }
+            // INFINITE / INFINITY
+            int k = after;
+            if (!is(s, k, 'I')) continue;
+            k = skipCommas(s, k + 1);
+            if (!is(s, k, 'N')) continue;
+            k = skipCommas(s, k + 1);
+            if (!is(s, k, 'I')) continue;
+            k = skipCommas(s, k + 1);
+            if (!is(s, k, 'T')) continue;
+            k = skipCommas(s, k + 1);
+            if (is(s, k, 'E') || is(s, k, 'Y')) return true;
+        }
+        return false;
+    }
+
+    /**
+     * End (exclusive) of the numeric literal starting exactly at i, or -1
+     */
+    private static long match(CharSequence s, int i) {
+        int n = s.length();
+        int p = i;
+        char c = s.charAt(p);
+        if (c == '+' || c == '-') {
+            p = skipCommas(s, p + 1);
+        } else if (c == ',') {
+            // A literal never starts on a removed comma
+            return -1;
+        }
+
+        // \d*\.?\d+ : integer digits, then an optional fraction that needs a digit
+        int intEnd = digits(s, p);
+        int dot = skipCommas(s, intEnd);
+        int end;
+        if (dot < n && s.charAt(dot) == '.' && isDigit(s, skipCommas(s, dot + 1))) {
+            end = digits(s, skipCommas(s, dot + 1));
+        } else if (intEnd > p) {
+            end = intEnd;
+        } else {
+            return -1;
+        }
+
+        // Optional exponent, only taken when complete
+        int e = skipCommas(s, end);
+        if (e < n && (s.charAt(e) == 'e' || s.charAt(e) == 'E')) {
+            int q = skipCommas(s, e + 1);
+            if (q < n && (s.charAt(q) == '+' || s.charAt(q) == '-')) {
+                q = skipCommas(s, q + 1);
+            }
+            if (isDigit(s, q)) {
+                end = digits(s, q);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Value of the literal in [start, end), commas skipped
+     */
+    private static double toDouble(CharSequence s, int start, int end) {
+        boolean negative = false;
+        long mantissa = 0;
+        int digitCount = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int exp = 0;
+        boolean expNegative = false;
+        boolean inExp = false;
+
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
+            if (c == ',') continue;
+            if (inExp) {
+                if (c == '-') expNegative = true;
+                else if (c != '+' && exp < 100_000) exp = exp * 10 + (c - '0');
+            } else if (c == '-') {
+                negative = true;
+            } else if (c == '.') {
+                fraction = true;
+            } else if (c == 'e' || c == 'E') {
+                inExp = true;
+            } else if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0') {
+                    // Leading zeros carry no precision
+                    if (fraction) scale--;
+                    continue;
+                }
+                if (digitCount >= MAX_EXACT_DIGITS) {
+                    return slowParse(s, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digitCount++;
+                if (fraction) scale--;
+            }
+        }
+
+        int e10 = scale + (expNegative ? -exp : exp);
+        double v;
+        if (mantissa == 0) {
+            v = 0.0;
+        } else if (e10 == 0) {
+            v = mantissa;
+        } else if (e10 > 0 && e10 < POW10.length) {
+            v = mantissa * POW10[e10];
+        } else if (e10 < 0 && -e10 < POW10.length) {
+            v = mantissa / POW10[-e10];
+        } else {
+            return slowParse(s, start, end);
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * Correctly rounded fallback for literals outside the exact fast path
+     */
+    private static double slowParse(CharSequence s, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
+            if (c != ',') sb.append(c);
+        }
+        return Double.parseDouble(sb.toString());
+    }
+
+    private static int digits(CharSequence s, int p) {
+        int n = s.length();
+        int last = p;
+        while (p < n) {
+            char c = s.charAt(p);
+            if (c >= '0' && c <= '9') {
+                last = ++p;
+            } else if (c == ',') {
+                p++;
+            } else {
+                break;
+            }
+        }
+        return last;
+    }
+
+    private static int skipCommas(CharSequence s, int p) {
+        int n = s.length();
+        while (p < n && s.charAt(p) == ',') p++;
+        return p;
+    }
+
+    private static int skipCommasBack(CharSequence s, int p) {
+        while (p >= 0 && s.charAt(p) == ',') p--;
+        return p;
+    }
+
+    private static boolean isDigit(CharSequence s, int p) {
+        if (p >= s.length()) return false;
+        char c = s.charAt(p);
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean is(CharSequence s, int p, char upper) {
+        return p < s.length() && Character.toUpperCase(s.charAt(p)) == upper;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -1,17 +1,30 @@
 package com.example.demo.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.LazyGroup;
+import org.hibernate.type.SqlTypes;
+
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Entity to store form submission data for audit and tracking purposes
  */
 @Entity
-@Table(name = "form_submissions")
+@Table(name = "form_submissions", indexes = {
+        // Mirrors db/migration/common; the substring searches use trigram indexes (db/migration/postgresql)
+        @Index(name = "idx_form_submissions_uploaded_at", columnList = "uploaded_at DESC, id DESC"),
+        @Index(name = "idx_form_submissions_status", columnList = "status, uploaded_at DESC, id DESC"),
+        @Index(name = "idx_form_submissions_relay_line", columnList = "relay_location, line_number, uploaded_at DESC")
+})
 public class FormSubmission {
 
+    // Ids come from a sequence in blocks of 50 (pooled), so inserts can be JDBC-batched;
+    // IDENTITY would need a round trip per row to learn the id
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "form_submissions_seq")
+    @SequenceGenerator(name = "form_submissions_seq", sequenceName = "form_submissions_seq", allocationSize = 50)
     private Long id;
 
     // Basic information
@@ -34,8 +47,10 @@ public class FormSubmission {
     @Column(name = "conductor_rating")
     private String conductorRating;
 
-    // Complete form data as JSON
-    @Lob
+    // Complete form data as JSON; plain TEXT (not a large object), loaded only when read
+    // (lazy basic attribute, needs the Hibernate bytecode enhancement in the build)
+    @Basic(fetch = FetchType.LAZY)
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
     @Column(name = "form_data_json", columnDefinition = "TEXT")
     private String formDataJson;
 
@@ -50,6 +65,16 @@ public class FormSubmission {
     @Column(name = "generated_file_name")
     private String generatedFileName;
 
+    // The generated workbook as a delta against the template it was generated from
+    // (see WorkbookArchive); loaded only when read, apart from the form data
+    @Column(name = "template_version", length = 64)
+    private String templateVersion;
+
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("workbook")
+    @Column(name = "workbook_delta")
+    private byte[] workbookDelta;
+
     // Status tracking
     @Column(name = "status", length = 50)
     private String status; // e.g., "SUCCESS", "FAILED", "PROCESSING"
@@ -68,6 +93,20 @@ public class FormSubmission {
         this.formDataJson = formDataJson;
     }
 
+    /**
+     * A submission of the given form, with the summary fields copied out of it
+     */
+    public FormSubmission(String formDataJson, Map<String, String> formData, String csvFileName) {
+        this(formDataJson);
+        this.relayLocation = formData.get("relayLocation");
+        this.lineNumber = formData.get("lineNumber");
+        this.remoteLocation = formData.get("remoteLocation");
+        this.nominalSystemVoltage = formData.get("nominalSystemVoltage");
+        this.breakerRating = formData.get("breakerRating");
+        this.conductorRating = formData.get("conductorRating");
+        this.csvFileName = csvFileName;
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -157,6 +196,22 @@ public class FormSubmission {
         this.generatedFileName = generatedFileName;
     }
 
+    public String getTemplateVersion() {
+        return templateVersion;
+    }
+
+    public void setTemplateVersion(String templateVersion) {
+        this.templateVersion = templateVersion;
+    }
+
+    public byte[] getWorkbookDelta() {
+        return workbookDelta;
+    }
+
+    public void setWorkbookDelta(byte[] workbookDelta) {
+        this.workbookDelta = workbookDelta;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -0,0 +1,8 @@
+package com.example.demo.entity;
+
+/**
+ * A submission's generated workbook as stored: the SHA-256 of its template
+ * and its cell writes against it; both null when none was stored
+ */
+public record StoredWorkbook(String templateVersion, byte[] workbookDelta) {
+}
@@ -0,0 +1,19 @@
+package com.example.demo.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns list views show; a projection of {@link FormSubmission} that
+ * never selects form_data_json, error_message or the workbook delta.
+ * generatedFileName is only set for /jobs results, templateVersion only when
+ * a delta is stored.
+ */
+public record SubmissionSummary(Long id,
+                                String relayLocation,
+                                String lineNumber,
+                                String remoteLocation,
+                                String status,
+                                LocalDateTime uploadedAt,
+                                String generatedFileName,
+                                String templateVersion) {
+}
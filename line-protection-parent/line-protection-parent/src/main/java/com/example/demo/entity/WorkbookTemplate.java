@@ -0,0 +1,53 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A template version kept for rebuilding the workbooks generated from it:
+ * the sanitized package, keyed by its SHA-256
+ */
+@Entity
+@Table(name = "workbook_templates")
+public class WorkbookTemplate {
+
+    @Id
+    @Column(name = "version", length = 64)
+    private String version;
+
+    @Column(name = "content", nullable = false)
+    private byte[] content;
+
+    @Column(name = "location", length = 1024)
+    private String location;
+
+    @Column(name = "stored_at", nullable = false)
+    private LocalDateTime storedAt;
+
+    protected WorkbookTemplate() {
+    }
+
+    public WorkbookTemplate(String version, byte[] content, String location) {
+        this.version = version;
+        this.content = content;
+        this.location = location;
+        this.storedAt = LocalDateTime.now();
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public LocalDateTime getStoredAt() {
+        return storedAt;
+    }
+}
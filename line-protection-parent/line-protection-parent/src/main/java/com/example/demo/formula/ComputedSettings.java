@@ -0,0 +1,47 @@
+package com.example.demo.formula;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Key outputs of one generated workbook as evaluated on the server, in the
+ * order of the key-output resource. Values are numbers, text, booleans, or
+ * the Excel error text (e.g. "#DIV/0!") when a formula failed.
+ */
+public final class ComputedSettings {
+
+    private final Map<String, Object> values;
+    private final int evaluated;
+    private final int failed;
+    private final long millis;
+
+    public ComputedSettings(Map<String, Object> values, int evaluated, int failed, long millis) {
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.evaluated = evaluated;
+        this.failed = failed;
+        this.millis = millis;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Formula cells evaluated because they depend on a written cell
+     */
+    public int getEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * Of those, the ones POI could not evaluate (unsupported function or reference)
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
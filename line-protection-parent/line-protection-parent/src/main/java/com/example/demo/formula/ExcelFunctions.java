@@ -0,0 +1,214 @@
+package com.example.demo.formula;
+
+import org.apache.poi.ss.formula.OperationEvaluationContext;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.EvaluationException;
+import org.apache.poi.ss.formula.eval.NotImplementedFunctionException;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.OperandResolver;
+import org.apache.poi.ss.formula.eval.RefEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.FreeRefFunction;
+import org.apache.poi.ss.formula.functions.Function;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Locale;
+
+/**
+ * Excel functions the template uses that POI does not implement: CELL (the
+ * "address", "row" and "col" info types) and the complex-number functions
+ * IMABS, IMARGUMENT and IMDIV. POI keeps its function table globally, so
+ * they are registered once per class loader.
+ */
+final class ExcelFunctions {
+
+    // CELL("address") needs sheet names, which POI's function API does not pass in
+    private static final ThreadLocal<Workbook> CURRENT = new ThreadLocal<>();
+
+    static {
+        builtin("CELL", ExcelFunctions::cell);
+        analysisToolPak("IMABS", complexFunction(1, z -> new NumberEval(Math.hypot(z[0][0], z[0][1]))));
+        analysisToolPak("IMARGUMENT", complexFunction(1, z -> {
+            if (z[0][0] == 0 && z[0][1] == 0) return ErrorEval.DIV_ZERO;
+            return new NumberEval(Math.atan2(z[0][1], z[0][0]));
+        }));
+        analysisToolPak("IMDIV", complexFunction(2, z -> {
+            double a = z[0][0], b = z[0][1], c = z[1][0], d = z[1][1];
+            double den = c * c + d * d;
+            if (den == 0) return ErrorEval.NUM_ERROR;
+            return new StringEval(format((a * c + b * d) / den, (b * c - a * d) / den));
+        }));
+    }
+
+    private ExcelFunctions() {
+    }
+
+    /**
+     * Make sure the functions are registered; safe to call any number of times
+     */
+    static void register() {
+        // Registration happens in the static initializer
+    }
+
+    /**
+     * Run evaluation of wb on this thread with the functions able to see it
+     */
+    static void bind(Workbook wb) {
+        CURRENT.set(wb);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    private static void builtin(String name, Function f) {
+        try {
+            WorkbookEvaluator.registerFunction(name, f);
+        } catch (IllegalArgumentException e) {
+            // POI implements it itself by now
+        }
+    }
+
+    private static void analysisToolPak(String name, FreeRefFunction f) {
+        try {
+            WorkbookEvaluator.registerFunction(name, f);
+        } catch (IllegalArgumentException e) {
+            // POI implements it itself by now
+        }
+    }
+
+    private static ValueEval cell(ValueEval[] args, int srcRow, int srcCol) {
+        if (args.length != 2) {
+            // CELL without a reference describes the last changed cell, which has no meaning here
+            throw new NotImplementedFunctionException("CELL");
+        }
+        String infoType;
+        try {
+            infoType = OperandResolver.coerceValueToString(OperandResolver.getSingleValue(args[0], srcRow, srcCol));
+        } catch (EvaluationException e) {
+            return e.getErrorEval();
+        }
+
+        int sheet, row, col;
+        if (args[1] instanceof RefEval ref) {
+            sheet = ref.getFirstSheetIndex();
+            row = ref.getRow();
+            col = ref.getColumn();
+        } else if (args[1] instanceof AreaEval area) {
+            sheet = area.getFirstSheetIndex();
+            row = area.getFirstRow();
+            col = area.getFirstColumn();
+        } else {
+            return ErrorEval.VALUE_INVALID;
+        }
+
+        switch (infoType.toLowerCase(Locale.ROOT)) {
+            case "address":
+                String address = new CellReference(row, col, true, true).formatAsString();
+                Workbook wb = CURRENT.get();
+                if (wb == null || sheet < 0) {
+                    return new StringEval(address);
+                }
+                // Always sheet-qualified so that INDIRECT(CELL("address", ...)) resolves from any sheet
+                return new StringEval("'" + wb.getSheetName(sheet).replace("'", "''") + "'!" + address);
+            case "row":
+                return new NumberEval(row + 1);
+            case "col":
+                return new NumberEval(col + 1);
+            default:
+                throw new NotImplementedFunctionException("CELL(\"" + infoType + "\")");
+        }
+    }
+
+    private interface ComplexOp {
+        ValueEval apply(double[][] z);
+    }
+
+    private static FreeRefFunction complexFunction(int arity, ComplexOp op) {
+        return (ValueEval[] args, OperationEvaluationContext ec) -> {
+            if (args.length != arity) {
+                return ErrorEval.VALUE_INVALID;
+            }
+            double[][] z = new double[arity][];
+            for (int i = 0; i < arity; i++) {
+                try {
+                    ValueEval v = OperandResolver.getSingleValue(args[i], ec.getRowIndex(), ec.getColumnIndex());
+                    z[i] = parse(OperandResolver.coerceValueToString(v));
+                } catch (EvaluationException e) {
+                    return e.getErrorEval();
+                }
+                if (z[i] == null) {
+                    return ErrorEval.NUM_ERROR;
+                }
+            }
+            return op.apply(z);
+        };
+    }
+
+    /**
+     * Real and imaginary part of a complex number in Excel text form
+     * ("3", "4i", "3+4i", "-2.5-1j", "-i"), or null when malformed
+     */
+    static double[] parse(String text) {
+        String s = text.trim();
+        if (s.isEmpty()) {
+            return new double[]{0, 0};
+        }
+        try {
+            char last = s.charAt(s.length() - 1);
+            if (last != 'i' && last != 'j') {
+                return new double[]{Double.parseDouble(s), 0};
+            }
+            String body = s.substring(0, s.length() - 1);
+            // The imaginary part starts at the last sign that is not leading and not an exponent sign
+            int split = -1;
+            for (int k = body.length() - 1; k > 0; k--) {
+                char ch = body.charAt(k);
+                if ((ch == '+' || ch == '-') && body.charAt(k - 1) != 'e' && body.charAt(k - 1) != 'E') {
+                    split = k;
+                    break;
+                }
+            }
+            double real = (split < 0) ? 0 : Double.parseDouble(body.substring(0, split));
+            return new double[]{real, coefficient(split < 0 ? body : body.substring(split))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double coefficient(String s) {
+        return switch (s) {
+            case "", "+" -> 1;
+            case "-" -> -1;
+            default -> Double.parseDouble(s);
+        };
+    }
+
+    /**
+     * Excel's text form: 15 significant digits, parts of zero left out
+     */
+    static String format(double real, double imaginary) {
+        String re = number(real);
+        if (imaginary == 0) {
+            return re;
+        }
+        String im = (imaginary == 1) ? "" : (imaginary == -1) ? "-" : number(imaginary);
+        if (real == 0) {
+            return im + "i";
+        }
+        return re + (imaginary > 0 ? "+" : "") + im + "i";
+    }
+
+    private static String number(double d) {
+        if (d == 0) {
+            return "0";
+        }
+        return new BigDecimal(d).round(new MathContext(15)).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.demo.formula;
+
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.TemplateCache;
+import com.example.demo.template.TemplateSheet;
+import com.example.demo.template.WorkbookPatch;
+import com.opencsv.CSVReader;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellFormulaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-side evaluation of the formulas a submission can change. The
+ * template's {@link FormulaGraph} and resolved key outputs are built once per
+ * template version; each request then evaluates only the formula cells
+ * downstream of its written cells and reads the key outputs back.
+ */
+@Component
+public class FormulaEvaluationService {
+
+    private static final Logger log = LoggerFactory.getLogger(FormulaEvaluationService.class);
+
+    // Distinct written-cell layouts remembered per template; submissions share a handful
+    private static final int AFFECTED_MEMO_SIZE = 16;
+    private static final int SETTINGS_MEMO_SIZE = 1024;
+
+    private final TemplateCache templateCache;
+    private final ResourceLoader resourceLoader;
+    private final boolean enabled;
+    private final String location;
+
+    private volatile Compiled compiled;
+
+    // Settings of recent results by result-cache key, guarded by itself
+    private final LinkedHashMap<String, ComputedSettings> recentSettings = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ComputedSettings> eldest) {
+            return size() > SETTINGS_MEMO_SIZE;
+        }
+    };
+
+    public FormulaEvaluationService(TemplateCache templateCache,
+                                    ResourceLoader resourceLoader,
+                                    @Value("${generation.evaluate-formulas:false}") boolean enabled,
+                                    @Value("${generation.key-outputs:classpath:mappings/key-outputs-v1.csv}") String location) {
+        this.templateCache = templateCache;
+        this.resourceLoader = resourceLoader;
+        this.enabled = enabled;
+        this.location = location;
+        if (enabled) {
+            ExcelFunctions.register();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            compiledFor(templateCache.get());
+        } catch (Exception e) {
+            log.warn("Formula graph build failed: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Evaluate the formulas depending on the patch's writes in wb (a workbook
+     * opened from the patch's template with the patch applied) and read the
+     * key outputs. Cached formula values in wb are updated in place.
+     */
+    public ComputedSettings evaluate(XSSFWorkbook wb, WorkbookPatch patch) throws Exception {
+        long t0 = System.nanoTime();
+        Compiled c = compiledFor(patch.getTemplate());
+        FormulaGraph graph = c.graph;
+        int[] affected = c.affectedBy(patch.writtenCells());
+
+        // Formulas POI can only parse rewritten are swapped in for the evaluation, then restored
+        Map<CTCellFormula, String> originals = new LinkedHashMap<>();
+        for (int id : graph.rewritten()) {
+            Cell cell = cellAt(wb, graph.sheetOf(id), graph.rowOf(id), graph.colOf(id));
+            CTCellFormula f = (cell == null) ? null : ((XSSFCell) cell).getCTCell().getF();
+            if (f != null && f.getT() != STCellFormulaType.SHARED) {
+                originals.put(f, f.getStringValue());
+                f.setStringValue(graph.rewriteOf(id));
+            }
+        }
+
+        FormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
+        BitSet failed = new BitSet();
+        ExcelFunctions.bind(wb);
+        try {
+            for (int id : affected) {
+                Cell cell = cellAt(wb, graph.sheetOf(id), graph.rowOf(id), graph.colOf(id));
+                if (cell == null) continue;
+                try {
+                    evaluator.evaluateFormulaCell(cell);
+                } catch (RuntimeException e) {
+                    failed.set(id);
+                    log.debug("Formula {}!{} not evaluated: {}", wb.getSheetName(graph.sheetOf(id)),
+                            new CellAddress(cell), rootCause(e).toString());
+                }
+            }
+        } finally {
+            ExcelFunctions.unbind();
+            originals.forEach(CTCellFormula::setStringValue);
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (KeyOutput out : c.outputs) {
+            Cell cell = cellAt(wb, out.sheet, out.row, out.col);
+            values.put(out.name, (out.formulaId >= 0 && failed.get(out.formulaId)) ? null : valueOf(cell));
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        log.info("Evaluated {} dependent formulas ({} failed) of {} in {} ms",
+                affected.length, failed.cardinality(), graph.size(), millis);
+        return new ComputedSettings(values, affected.length, failed.cardinality(), millis);
+    }
+
+    /**
+     * Settings remembered for a cached result, or null
+     */
+    public ComputedSettings recall(String resultKey) {
+        synchronized (recentSettings) {
+            return recentSettings.get(resultKey);
+        }
+    }
+
+    public void remember(String resultKey, ComputedSettings settings) {
+        synchronized (recentSettings) {
+            recentSettings.put(resultKey, settings);
+        }
+    }
+
+    private Compiled compiledFor(CachedTemplate template) throws Exception {
+        Compiled c = compiled;
+        if (c != null && c.templateVersion.equals(template.getVersion())) {
+            return c;
+        }
+        synchronized (this) {
+            if (compiled == null || !compiled.templateVersion.equals(template.getVersion())) {
+                long t0 = System.nanoTime();
+                FormulaGraph graph;
+                try (XSSFWorkbook wb = templateCache.openWorkbook(template)) {
+                    graph = FormulaGraph.build(wb);
+                }
+                compiled = new Compiled(template.getVersion(), graph, resolveOutputs(template, graph));
+                log.info("Built formula graph for template {}: {} formulas ({} unparsable), {} key outputs, {} ms",
+                        template.getVersion().substring(0, 12), graph.size(), graph.unparsableCount(),
+                        compiled.outputs.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+            }
+            return compiled;
+        }
+    }
+
+    private List<KeyOutput> resolveOutputs(CachedTemplate template, FormulaGraph graph) throws Exception {
+        Resource res = resourceLoader.getResource(location);
+        if (!res.exists()) {
+            throw new FileNotFoundException("Key outputs missing: " + location);
+        }
+
+        List<KeyOutput> outputs = new ArrayList<>();
+        boolean header = true;
+        try (CSVReader reader = new CSVReader(new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (row.length == 0 || row[0].isBlank() || row[0].startsWith("#")) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                TemplateSheet sheet = template.getSheet(row[0]);
+                if (sheet == null) {
+                    log.warn("Key output '{}': sheet '{}' not found in template", row[2], row[0]);
+                    continue;
+                }
+                CellAddress addr = new CellAddress(row[1]);
+                outputs.add(new KeyOutput(row[2], sheet.getIndex(), addr.getRow(), addr.getColumn(),
+                        graph.idOf(sheet.getIndex(), addr.getRow(), addr.getColumn())));
+            }
+        }
+        return List.copyOf(outputs);
+    }
+
+    private static Cell cellAt(XSSFWorkbook wb, int sheet, int row, int col) {
+        Row r = wb.getSheetAt(sheet).getRow(row);
+        return r == null ? null : r.getCell(col);
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null && e.getCause() != e) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static Object valueOf(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        return switch (type) {
+            case NUMERIC -> cell.getNumericCellValue();
+            case STRING -> cell.getStringCellValue();
+            case BOOLEAN -> cell.getBooleanCellValue();
+            case ERROR -> FormulaError.forInt(cell.getErrorCellValue()).getString();
+            default -> null;
+        };
+    }
+
+    private static final class KeyOutput {
+
+        private final String name;
+        private final int sheet;
+        private final int row;
+        private final int col;
+        private final int formulaId;
+
+        KeyOutput(String name, int sheet, int row, int col, int formulaId) {
+            this.name = name;
+            this.sheet = sheet;
+            this.row = row;
+            this.col = col;
+            this.formulaId = formulaId;
+        }
+    }
+
+    /**
+     * Everything derived from one template version
+     */
+    private static final class Compiled {
+
+        private final String templateVersion;
+        private final FormulaGraph graph;
+        private final List<KeyOutput> outputs;
+
+        // Affected formulas by written-cell layout, guarded by itself
+        private final LinkedHashMap<String, int[]> affected = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > AFFECTED_MEMO_SIZE;
+            }
+        };
+
+        Compiled(String templateVersion, FormulaGraph graph, List<KeyOutput> outputs) {
+            this.templateVersion = templateVersion;
+            this.graph = graph;
+            this.outputs = outputs;
+        }
+
+        int[] affectedBy(int[] writtenCells) {
+            String layout = Arrays.toString(writtenCells);
+            synchronized (affected) {
+                int[] ids = affected.get(layout);
+                if (ids != null) {
+                    return ids;
+                }
+            }
+            int[] ids = graph.affectedBy(writtenCells);
+            synchronized (affected) {
+                affected.put(layout, ids);
+            }
+            return ids;
+        }
+    }
+}
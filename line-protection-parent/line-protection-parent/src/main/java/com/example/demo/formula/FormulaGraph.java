@@ -0,0 +1,380 @@
+package com.example.demo.formula;
+
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.Area3DPxg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPxg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Ref3DPxg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precedent/dependent graph of every formula in one template, built once from
+ * the parsed formula tokens. Given the cells a request writes, it answers
+ * which formula cells can change, so only those need evaluating.
+ *
+ * References through defined names are followed; formulas using INDIRECT or
+ * OFFSET can point anywhere, so they are treated as depending on every input.
+ * POI cannot parse sheet-qualified names ('1) Data Entry'!CTR), so formulas
+ * using them get a rewrite with the name replaced by its definition.
+ */
+public final class FormulaGraph {
+
+    private static final Set<String> DYNAMIC_FUNCTIONS = Set.of("INDIRECT", "OFFSET");
+
+    // Sheet!Identifier not followed by anything that would make it a cell, range or function
+    private static final Pattern SHEET_QUALIFIED_NAME =
+            Pattern.compile("('(?:[^']|'')+'|[A-Za-z_][\\w.]*)!([A-Za-z_\\\\][\\w.]*)(?![\\w.(!:$])");
+
+    // Areas up to this many cells are probed cell by cell instead of scanning the sheet's formulas
+    private static final int PROBE_LIMIT = 256;
+
+    private final int size;
+    private final int[] sheets;
+    private final int[] rows;
+    private final int[] cols;
+    private final BitSet dynamic;
+    private final BitSet unparsable;
+    private final Map<Integer, String> rewrites;
+
+    // Precedent areas of all formulas, flattened: owner formula and bounds
+    private final int[] areaOwner;
+    private final int[] areaSheet;
+    private final int[] areaFirstRow;
+    private final int[] areaLastRow;
+    private final int[] areaFirstCol;
+    private final int[] areaLastCol;
+
+    // dependents[f] = formulas reading formula cell f
+    private final int[][] dependents;
+
+    private FormulaGraph(List<int[]> cells, BitSet dynamic, BitSet unparsable, Map<Integer, String> rewrites,
+                         List<int[]> areas, int[][] dependents) {
+        this.size = cells.size();
+        this.sheets = new int[size];
+        this.rows = new int[size];
+        this.cols = new int[size];
+        for (int i = 0; i < size; i++) {
+            int[] c = cells.get(i);
+            sheets[i] = c[0];
+            rows[i] = c[1];
+            cols[i] = c[2];
+        }
+        this.dynamic = dynamic;
+        this.unparsable = unparsable;
+        this.rewrites = rewrites;
+
+        int n = areas.size();
+        this.areaOwner = new int[n];
+        this.areaSheet = new int[n];
+        this.areaFirstRow = new int[n];
+        this.areaLastRow = new int[n];
+        this.areaFirstCol = new int[n];
+        this.areaLastCol = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[] a = areas.get(i);
+            areaOwner[i] = a[0];
+            areaSheet[i] = a[1];
+            areaFirstRow[i] = a[2];
+            areaLastRow[i] = a[3];
+            areaFirstCol[i] = a[4];
+            areaLastCol[i] = a[5];
+        }
+        this.dependents = dependents;
+    }
+
+    /**
+     * Parse every formula of the workbook and link formulas to the formula cells they read
+     */
+    public static FormulaGraph build(XSSFWorkbook wb) {
+        XSSFEvaluationWorkbook ew = XSSFEvaluationWorkbook.create(wb);
+
+        List<int[]> cells = new ArrayList<>();
+        List<String> formulas = new ArrayList<>();
+        // Formula ids per sheet, keyed by row << 16 | col
+        List<Map<Long, Integer>> bySheet = new ArrayList<>();
+        for (int s = 0; s < wb.getNumberOfSheets(); s++) {
+            Map<Long, Integer> ids = new HashMap<>();
+            Sheet sheet = wb.getSheetAt(s);
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    if (cell.getCellType() == CellType.FORMULA) {
+                        ids.put(key(cell.getRowIndex(), cell.getColumnIndex()), cells.size());
+                        cells.add(new int[]{s, cell.getRowIndex(), cell.getColumnIndex()});
+                        formulas.add(cell.getCellFormula());
+                    }
+                }
+            }
+            bySheet.add(ids);
+        }
+
+        BitSet dynamic = new BitSet();
+        BitSet unparsable = new BitSet();
+        Map<Integer, String> rewrites = new HashMap<>();
+        List<int[]> areas = new ArrayList<>();
+        for (int f = 0; f < cells.size(); f++) {
+            int[] c = cells.get(f);
+            Ptg[] ptgs;
+            try {
+                ptgs = FormulaParser.parse(formulas.get(f), ew, FormulaType.CELL, c[0], c[1]);
+            } catch (RuntimeException e) {
+                String rewritten = inlineSheetQualifiedNames(wb, formulas.get(f));
+                try {
+                    ptgs = FormulaParser.parse(rewritten, ew, FormulaType.CELL, c[0], c[1]);
+                    rewrites.put(f, rewritten);
+                } catch (RuntimeException stillFailing) {
+                    // POI cannot parse it, so it cannot evaluate it either
+                    unparsable.set(f);
+                    continue;
+                }
+            }
+            collect(wb, ew, f, c[0], ptgs, areas, dynamic, new HashSet<>());
+        }
+
+        List<List<Integer>> deps = new ArrayList<>(cells.size());
+        for (int f = 0; f < cells.size(); f++) {
+            deps.add(new ArrayList<>());
+        }
+        List<List<int[]>> formulaCellsBySheet = new ArrayList<>();
+        for (int s = 0; s < wb.getNumberOfSheets(); s++) {
+            formulaCellsBySheet.add(new ArrayList<>());
+        }
+        for (int f = 0; f < cells.size(); f++) {
+            int[] c = cells.get(f);
+            formulaCellsBySheet.get(c[0]).add(new int[]{c[1], c[2], f});
+        }
+        for (int[] a : areas) {
+            int owner = a[0];
+            int sheet = a[1];
+            long cellCount = (long) (a[3] - a[2] + 1) * (a[5] - a[4] + 1);
+            if (cellCount <= PROBE_LIMIT) {
+                Map<Long, Integer> ids = bySheet.get(sheet);
+                for (int r = a[2]; r <= a[3]; r++) {
+                    for (int col = a[4]; col <= a[5]; col++) {
+                        Integer precedent = ids.get(key(r, col));
+                        if (precedent != null) {
+                            deps.get(precedent).add(owner);
+                        }
+                    }
+                }
+            } else {
+                for (int[] fc : formulaCellsBySheet.get(sheet)) {
+                    if (fc[0] >= a[2] && fc[0] <= a[3] && fc[1] >= a[4] && fc[1] <= a[5]) {
+                        deps.get(fc[2]).add(owner);
+                    }
+                }
+            }
+        }
+        int[][] dependents = new int[cells.size()][];
+        for (int f = 0; f < cells.size(); f++) {
+            dependents[f] = deps.get(f).stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+        return new FormulaGraph(cells, dynamic, unparsable, Map.copyOf(rewrites), areas, dependents);
+    }
+
+    /**
+     * Replace every 'Sheet'!Name outside string literals by the definition of
+     * Name in that sheet's scope (or the workbook scope)
+     */
+    static String inlineSheetQualifiedNames(XSSFWorkbook wb, String formula) {
+        String[] parts = formula.split("\"", -1);
+        // Even parts are outside string literals; an escaped "" yields an empty odd/even pair
+        for (int i = 0; i < parts.length; i += 2) {
+            Matcher m = SHEET_QUALIFIED_NAME.matcher(parts[i]);
+            StringBuilder sb = new StringBuilder();
+            while (m.find()) {
+                String sheetName = m.group(1).startsWith("'")
+                        ? m.group(1).substring(1, m.group(1).length() - 1).replace("''", "'")
+                        : m.group(1);
+                String definition = definition(wb, wb.getSheetIndex(sheetName), m.group(2));
+                if (definition == null) {
+                    definition = m.group();
+                } else if (definition.indexOf(',') >= 0) {
+                    // A union; a plain reference stays bare so reference-taking functions like CELL still get a reference
+                    definition = "(" + definition + ")";
+                }
+                m.appendReplacement(sb, Matcher.quoteReplacement(definition));
+            }
+            m.appendTail(sb);
+            parts[i] = sb.toString();
+        }
+        return String.join("\"", parts);
+    }
+
+    private static String definition(XSSFWorkbook wb, int sheetIndex, String nameText) {
+        if (sheetIndex < 0) {
+            return null;
+        }
+        String global = null;
+        for (Name name : wb.getNames(nameText)) {
+            if (name.getSheetIndex() == sheetIndex) {
+                return name.getRefersToFormula();
+            }
+            if (name.getSheetIndex() == -1) {
+                global = name.getRefersToFormula();
+            }
+        }
+        return global;
+    }
+
+    private static void collect(XSSFWorkbook wb, XSSFEvaluationWorkbook ew, int owner, int sheet, Ptg[] ptgs,
+                                List<int[]> areas, BitSet dynamic, Set<Integer> namesSeen) {
+        for (Ptg ptg : ptgs) {
+            if (ptg instanceof Ref3DPxg ref) {
+                if (ref.getExternalWorkbookNumber() > 0) continue;
+                for (int s : sheetSpan(wb, ref.getSheetName(), ref.getLastSheetName())) {
+                    areas.add(new int[]{owner, s, ref.getRow(), ref.getRow(), ref.getColumn(), ref.getColumn()});
+                }
+            } else if (ptg instanceof Area3DPxg area) {
+                if (area.getExternalWorkbookNumber() > 0) continue;
+                for (int s : sheetSpan(wb, area.getSheetName(), area.getLastSheetName())) {
+                    areas.add(new int[]{owner, s, area.getFirstRow(), area.getLastRow(), area.getFirstColumn(), area.getLastColumn()});
+                }
+            } else if (ptg instanceof RefPtgBase ref) {
+                areas.add(new int[]{owner, sheet, ref.getRow(), ref.getRow(), ref.getColumn(), ref.getColumn()});
+            } else if (ptg instanceof AreaPtgBase area) {
+                areas.add(new int[]{owner, sheet, area.getFirstRow(), area.getLastRow(), area.getFirstColumn(), area.getLastColumn()});
+            } else if (ptg instanceof NamePtg namePtg) {
+                collectName(wb, ew, owner, sheet, ew.getName(namePtg), areas, dynamic, namesSeen);
+            } else if (ptg instanceof NameXPxg nameX) {
+                // Sheet-qualified name, e.g. '1) Data Entry'!Line_Limit
+                if (nameX.getExternalWorkbookNumber() > 0) continue;
+                int scope = (nameX.getSheetName() == null) ? -1 : wb.getSheetIndex(nameX.getSheetName());
+                collectName(wb, ew, owner, sheet, ew.getName(nameX.getNameName(), scope), areas, dynamic, namesSeen);
+            } else if (ptg instanceof AbstractFunctionPtg fn && DYNAMIC_FUNCTIONS.contains(fn.getName())) {
+                dynamic.set(owner);
+            }
+        }
+    }
+
+    private static void collectName(XSSFWorkbook wb, XSSFEvaluationWorkbook ew, int owner, int sheet, EvaluationName name,
+                                    List<int[]> areas, BitSet dynamic, Set<Integer> namesSeen) {
+        if (name == null || !namesSeen.add(name.createPtg().getIndex())) {
+            return;
+        }
+        try {
+            collect(wb, ew, owner, sheet, name.getNameDefinition(), areas, dynamic, namesSeen);
+        } catch (RuntimeException e) {
+            // Unresolvable name; the evaluator will report it for this cell
+        }
+    }
+
+    private static int[] sheetSpan(XSSFWorkbook wb, String first, String last) {
+        int a = wb.getSheetIndex(first);
+        if (a < 0) return new int[0];
+        int b = (last == null) ? a : wb.getSheetIndex(last);
+        if (b < a) return new int[]{a};
+        int[] span = new int[b - a + 1];
+        Arrays.setAll(span, i -> a + i);
+        return span;
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 16) | col;
+    }
+
+    /**
+     * Formula cells whose value can change when the given cells are written,
+     * as ids into this graph. inputs holds (sheet, row, col) triples.
+     */
+    public int[] affectedBy(int[] inputs) {
+        BitSet affected = new BitSet(size);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        if (inputs.length > 0) {
+            for (int f = dynamic.nextSetBit(0); f >= 0; f = dynamic.nextSetBit(f + 1)) {
+                affected.set(f);
+                queue.add(f);
+            }
+        }
+        for (int a = 0; a < areaOwner.length; a++) {
+            int owner = areaOwner[a];
+            if (affected.get(owner)) continue;
+            for (int i = 0; i < inputs.length; i += 3) {
+                if (areaSheet[a] == inputs[i]
+                        && inputs[i + 1] >= areaFirstRow[a] && inputs[i + 1] <= areaLastRow[a]
+                        && inputs[i + 2] >= areaFirstCol[a] && inputs[i + 2] <= areaLastCol[a]) {
+                    affected.set(owner);
+                    queue.add(owner);
+                    break;
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (int d : dependents[queue.poll()]) {
+                if (!affected.get(d)) {
+                    affected.set(d);
+                    queue.add(d);
+                }
+            }
+        }
+        affected.andNot(unparsable);
+        return affected.stream().toArray();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Formula to evaluate in place of the cell's own, or null when POI parses the original
+     */
+    public String rewriteOf(int id) {
+        return rewrites.get(id);
+    }
+
+    public Set<Integer> rewritten() {
+        return rewrites.keySet();
+    }
+
+    public int unparsableCount() {
+        return unparsable.cardinality();
+    }
+
+    /**
+     * Id of the formula at the given cell, or -1 when the cell holds no formula
+     */
+    public int idOf(int sheet, int row, int col) {
+        for (int i = 0; i < size; i++) {
+            if (sheets[i] == sheet && rows[i] == row && cols[i] == col) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int sheetOf(int id) {
+        return sheets[id];
+    }
+
+    public int rowOf(int id) {
+        return rows[id];
+    }
+
+    public int colOf(int id) {
+        return cols[id];
+    }
+}
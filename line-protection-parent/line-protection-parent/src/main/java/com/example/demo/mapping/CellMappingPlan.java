@@ -0,0 +1,237 @@
+package com.example.demo.mapping;
+
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.MergedRegionIndex;
+import com.example.demo.template.TemplateSheet;
+import com.example.demo.template.WorkbookPatch;
+import org.apache.poi.ss.util.CellAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cell mapping compiled against one template snapshot. Sheet names, cell
+ * addresses and merged regions are resolved once at compile time, so applying
+ * the plan is a single loop over primitive arrays. Entries are grouped by
+ * target sheet, in order of first appearance and mapping order within a
+ * sheet, so each sheet's cells are one contiguous range.
+ */
+public final class CellMappingPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(CellMappingPlan.class);
+
+    private static final int SOURCE_FORM = 0;
+    private static final int SOURCE_CSV = 1;
+
+    private final String version;
+    private final String rowsVersion;
+    private final String templateVersion;
+    private final int size;
+    private int csvRowsNeeded;
+
+    private final int[] sourceKinds;
+    private final String[] formKeys;
+    private final int[] csvRows;
+    private final int[] csvCols;
+    private final int[] sheets;
+    private final int[] rows;
+    private final int[] cols;
+    private final boolean[] skipBlank;
+
+    // Target sheet of each range; range k is [sheetStarts[k], sheetStarts[k + 1])
+    private int[] sheetIndexes;
+    private int[] sheetStarts;
+
+    // Only used for tracing
+    private final String[] targets;
+    private final String[] sources;
+
+    private CellMappingPlan(String version, String rowsVersion, String templateVersion, int size) {
+        this.version = version;
+        this.rowsVersion = rowsVersion;
+        this.templateVersion = templateVersion;
+        this.size = size;
+        this.sourceKinds = new int[size];
+        this.formKeys = new String[size];
+        this.csvRows = new int[size];
+        this.csvCols = new int[size];
+        this.sheets = new int[size];
+        this.rows = new int[size];
+        this.cols = new int[size];
+        this.skipBlank = new boolean[size];
+        this.targets = new String[size];
+        this.sources = new String[size];
+    }
+
+    /**
+     * Compile mapping rows (sheet, cell, mode, source, label) against a template.
+     * Rows targeting a sheet the template lacks are left out, with a warning.
+     */
+    public static CellMappingPlan compile(String version, List<String[]> mappingRows, CachedTemplate template) {
+        Map<TemplateSheet, List<MappedField>> bySheet = new LinkedHashMap<>();
+        Map<String, Integer> missing = new LinkedHashMap<>();
+        int kept = 0;
+        for (int r = 0; r < mappingRows.size(); r++) {
+            MappedField f = MappedField.parse(version, r, mappingRows.get(r));
+
+            TemplateSheet sheet = template.getSheet(f.getSheet());
+            if (sheet == null) {
+                missing.merge(f.getSheet(), 1, Integer::sum);
+                continue;
+            }
+            bySheet.computeIfAbsent(sheet, s -> new ArrayList<>()).add(f);
+            kept++;
+        }
+        missing.forEach((sheet, cells) ->
+                log.warn("Sheet '{}' not found in template, skipping its {} mapped cells", sheet, cells));
+
+        CellMappingPlan plan = new CellMappingPlan(version, hash(mappingRows), template.getVersion(), kept);
+
+        plan.sheetIndexes = new int[bySheet.size()];
+        plan.sheetStarts = new int[bySheet.size() + 1];
+        int i = 0;
+        int k = 0;
+        for (Map.Entry<TemplateSheet, List<MappedField>> e : bySheet.entrySet()) {
+            plan.sheetIndexes[k] = e.getKey().getIndex();
+            plan.sheetStarts[k++] = i;
+            for (MappedField f : e.getValue()) {
+                plan.compileEntry(i++, e.getKey(), f);
+            }
+        }
+        plan.sheetStarts[k] = i;
+        return plan;
+    }
+
+    /**
+     * SHA-256 of the mapping rows, rows and fields length-prefixed, hex encoded
+     */
+    private static String hash(List<String[]> mappingRows) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String[] row : mappingRows) {
+            length(md, row.length);
+            for (String field : row) {
+                byte[] b = (field == null ? "" : field).getBytes(StandardCharsets.UTF_8);
+                length(md, b.length);
+                md.update(b);
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static void length(MessageDigest md, int n) {
+        md.update((byte) (n >>> 24));
+        md.update((byte) (n >>> 16));
+        md.update((byte) (n >>> 8));
+        md.update((byte) n);
+    }
+
+    private void compileEntry(int i, TemplateSheet sheet, MappedField f) {
+        CellAddress ca = new CellAddress(f.getCell());
+        MergedRegionIndex merged = sheet.getMergedRegions();
+        int region = merged.find(ca.getRow(), ca.getColumn());
+        sheets[i] = sheet.getIndex();
+        rows[i] = (region >= 0) ? merged.firstRow(region)    : ca.getRow();
+        cols[i] = (region >= 0) ? merged.firstColumn(region) : ca.getColumn();
+        skipBlank[i] = f.isSkipBlank();
+
+        if (f.isCsv()) {
+            sourceKinds[i] = SOURCE_CSV;
+            csvRows[i] = f.getCsvRow();
+            csvCols[i] = f.getCsvCol();
+            csvRowsNeeded = Math.max(csvRowsNeeded, f.getCsvRow() + 1);
+        } else {
+            sourceKinds[i] = SOURCE_FORM;
+            formKeys[i] = f.getFormKey();
+        }
+
+        targets[i] = f.getCell();
+        sources[i] = f.getSource();
+    }
+
+    /**
+     * Resolve every mapped source and record the writes on the patch
+     */
+    public void apply(WorkbookPatch patch, Map<String, String> formData, CsvCellLookup csv, MappingTrace trace) {
+        for (int i = 0; i < size; i++) {
+            applyRow(i, patch, formData, csv, trace);
+        }
+    }
+
+    /**
+     * Same as {@link #apply(WorkbookPatch, Map, CsvCellLookup, MappingTrace)}
+     * for the cells of the k-th target sheet only (see {@link #getSheetIndex})
+     */
+    public void applySheet(int k, WorkbookPatch patch, Map<String, String> formData, CsvCellLookup csv, MappingTrace trace) {
+        for (int i = sheetStarts[k], end = sheetStarts[k + 1]; i < end; i++) {
+            applyRow(i, patch, formData, csv, trace);
+        }
+    }
+
+    private void applyRow(int i, WorkbookPatch patch, Map<String, String> formData, CsvCellLookup csv, MappingTrace trace) {
+        String value = (sourceKinds[i] == SOURCE_FORM)
+                ? formData.getOrDefault(formKeys[i], "")
+                : csv.get(csvRows[i], csvCols[i]);
+
+        if (skipBlank[i] && (value == null || value.isBlank())) {
+            return;
+        }
+        if (trace != null) {
+            trace.write(sheets[i], targets[i], sources[i], value);
+        }
+        patch.write(sheets[i], rows[i], cols[i], value);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * SHA-256 of the compiled mapping rows, hex encoded; changes with any edit
+     * to the mapping, whatever its resource is called
+     */
+    public String getRowsVersion() {
+        return rowsVersion;
+    }
+
+    public String getTemplateVersion() {
+        return templateVersion;
+    }
+
+    /**
+     * Number of template sheets the plan writes to
+     */
+    public int getSheetCount() {
+        return sheetIndexes.length;
+    }
+
+    /**
+     * Template sheet index of the k-th target sheet, in order of first appearance in the mapping
+     */
+    public int getSheetIndex(int k) {
+        return sheetIndexes[k];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of leading CSV rows the plan reads from
+     */
+    public int getCsvRowsNeeded() {
+        return csvRowsNeeded;
+    }
+}
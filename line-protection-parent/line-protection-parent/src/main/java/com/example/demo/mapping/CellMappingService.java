@@ -0,0 +1,127 @@
+package com.example.demo.mapping;
+
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.TemplateCache;
+import com.opencsv.CSVReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the versioned cell-mapping resource and keeps it compiled against the
+ * current template. A template reload triggers a recompile on next use.
+ */
+@Component
+public class CellMappingService {
+
+    private static final Logger log = LoggerFactory.getLogger(CellMappingService.class);
+
+    private final ResourceLoader resourceLoader;
+    private final TemplateCache templateCache;
+    private final String location;
+
+    private volatile List<String[]> mappingRows;
+    private volatile CellMappingPlan plan;
+
+    public CellMappingService(ResourceLoader resourceLoader,
+                              TemplateCache templateCache,
+                              @Value("${mapping.location:classpath:mappings/cell-mapping-v1.csv}") String location) {
+        this.resourceLoader = resourceLoader;
+        this.templateCache = templateCache;
+        this.location = location;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            planFor(templateCache.get());
+        } catch (Exception e) {
+            log.warn("Cell mapping compile from '{}' failed: {}", location, e.getMessage());
+        }
+    }
+
+    /**
+     * Plan compiled for the given template snapshot
+     */
+    public CellMappingPlan planFor(CachedTemplate template) throws Exception {
+        CellMappingPlan p = plan;
+        if (p != null && p.getTemplateVersion().equals(template.getVersion())) {
+            return p;
+        }
+        synchronized (this) {
+            if (plan == null || !plan.getTemplateVersion().equals(template.getVersion())) {
+                plan = CellMappingPlan.compile(versionName(), rows(), template);
+                log.info("Compiled cell mapping '{}' ({} cells) for template {}",
+                        plan.getVersion(), plan.size(), template.getVersion().substring(0, 12));
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Mapping rows targeting one sheet, parsed but not compiled, so no template is needed
+     */
+    public List<MappedField> fieldsFor(String sheetName) throws Exception {
+        List<String[]> rows = rows();
+        List<MappedField> fields = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            MappedField f = MappedField.parse(versionName(), i, rows.get(i));
+            if (f.getSheet().equals(sheetName)) {
+                fields.add(f);
+            }
+        }
+        return List.copyOf(fields);
+    }
+
+    /**
+     * Mapping version as named by its resource, e.g. "cell-mapping-v1"
+     */
+    public String getVersion() {
+        return versionName();
+    }
+
+    private List<String[]> rows() throws Exception {
+        if (mappingRows != null) {
+            return mappingRows;
+        }
+        Resource res = resourceLoader.getResource(location);
+        if (!res.exists()) {
+            throw new FileNotFoundException("Cell mapping missing: " + location);
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        boolean header = true;
+        try (CSVReader reader = new CSVReader(new InputStreamReader(res.getInputStream(), StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (row.length == 0 || row[0].isBlank() || row[0].startsWith("#")) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                rows.add(row);
+            }
+        }
+        mappingRows = List.copyOf(rows);
+        return mappingRows;
+    }
+
+    private String versionName() {
+        String name = location.substring(location.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.demo.mapping;
+
+/**
+ * Read access to the cells of an uploaded CAPE export
+ */
+@FunctionalInterface
+public interface CsvCellLookup {
+
+    /**
+     * Trimmed cell value at (row, col), or "" when the cell does not exist
+     */
+    String get(int row, int col);
+}
@@ -0,0 +1,120 @@
+package com.example.demo.mapping;
+
+import java.util.Map;
+
+/**
+ * One row of the cell mapping with its source and mode parsed, but not
+ * resolved against a template. Used by {@link CellMappingPlan} when compiling
+ * and on its own where only the mapped values matter, not their target cells.
+ */
+public final class MappedField {
+
+    private final String sheet;
+    private final String cell;
+    private final boolean skipBlank;
+    private final String source;
+    private final String formKey;
+    private final int csvRow;
+    private final int csvCol;
+    private final String label;
+
+    private MappedField(String sheet, String cell, boolean skipBlank, String source,
+                        String formKey, int csvRow, int csvCol, String label) {
+        this.sheet = sheet;
+        this.cell = cell;
+        this.skipBlank = skipBlank;
+        this.source = source;
+        this.formKey = formKey;
+        this.csvRow = csvRow;
+        this.csvCol = csvCol;
+        this.label = label;
+    }
+
+    /**
+     * Parse mapping row (sheet, cell, mode, source[, label]); index is 0-based and only used in errors
+     */
+    public static MappedField parse(String version, int index, String[] m) {
+        if (m.length < 4) {
+            throw new IllegalStateException("Mapping " + version + " row " + (index + 1) + " has " + m.length + " columns, expected 4 or 5");
+        }
+        String sheetName = m[0].trim();
+        String cell = m[1].trim();
+        String mode = m[2].trim();
+        String source = m[3].trim();
+        String label = m.length > 4 ? m[4].trim() : "";
+
+        boolean skipBlank;
+        if ("always".equalsIgnoreCase(mode)) {
+            skipBlank = false;
+        } else if ("ifPresent".equalsIgnoreCase(mode)) {
+            skipBlank = true;
+        } else {
+            throw new IllegalStateException("Unknown mode '" + mode + "' for " + sheetName + "!" + cell);
+        }
+
+        if (source.startsWith("form:")) {
+            return new MappedField(sheetName, cell, skipBlank, source, source.substring("form:".length()), -1, -1, label);
+        }
+        if (source.startsWith("csv:")) {
+            String[] rc = source.substring("csv:".length()).split(":");
+            if (rc.length != 2) {
+                throw new IllegalStateException("Bad CSV source '" + source + "' for " + sheetName + "!" + cell);
+            }
+            return new MappedField(sheetName, cell, skipBlank, source, null,
+                    Integer.parseInt(rc[0]), Integer.parseInt(rc[1]), label);
+        }
+        throw new IllegalStateException("Unknown source '" + source + "' for " + sheetName + "!" + cell);
+    }
+
+    /**
+     * Value of the field for one submission; may be blank
+     */
+    public String resolve(Map<String, String> formData, CsvCellLookup csv) {
+        return isCsv() ? csv.get(csvRow, csvCol) : formData.getOrDefault(formKey, "");
+    }
+
+    public boolean isCsv() {
+        return formKey == null;
+    }
+
+    public String getSheet() {
+        return sheet;
+    }
+
+    public String getCell() {
+        return cell;
+    }
+
+    /**
+     * True for ifPresent fields, whose blank values leave the template default
+     */
+    public boolean isSkipBlank() {
+        return skipBlank;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * formData key, or null for CSV fields
+     */
+    public String getFormKey() {
+        return formKey;
+    }
+
+    /**
+     * 0-based CSV row, or -1 for form fields
+     */
+    public int getCsvRow() {
+        return csvRow;
+    }
+
+    public int getCsvCol() {
+        return csvCol;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
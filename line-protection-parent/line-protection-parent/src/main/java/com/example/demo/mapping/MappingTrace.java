@@ -0,0 +1,62 @@
+package com.example.demo.mapping;
+
+import com.example.demo.template.CachedTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every source-to-cell write of one generation, logged as a single JSON record
+ * when the generation finishes. Only created for traced requests; untraced
+ * ones pass null, so the mapping hot path allocates nothing for tracing.
+ */
+public final class MappingTrace {
+
+    private static final Logger log = LoggerFactory.getLogger(MappingTrace.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final CachedTemplate template;
+    private final String reason;
+    private final List<Map<String, Object>> writes = new ArrayList<>(128);
+
+    /**
+     * @param reason why this request is traced, e.g. "header" or "sampled"
+     */
+    public MappingTrace(CachedTemplate template, String reason) {
+        this.template = template;
+        this.reason = reason;
+    }
+
+    /**
+     * Record a write of value (possibly blank) from source into sheet!cell
+     */
+    public void write(int sheet, String cell, String source, Object value) {
+        Map<String, Object> w = new LinkedHashMap<>(4);
+        w.put("cell", template.getSheetAt(sheet).getName() + "!" + cell);
+        w.put("source", source);
+        w.put("value", value);
+        writes.add(w);
+    }
+
+    /**
+     * Log the trace as one record
+     */
+    public void emit() {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("template", template.getVersion().substring(0, 12));
+        record.put("reason", reason);
+        record.put("writes", writes);
+        try {
+            log.info("Mapping trace {}", JSON.writeValueAsString(record));
+        } catch (JsonProcessingException e) {
+            log.warn("Mapping trace not written: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the stages of the upload pipeline, with percentile histograms so
+ * that p99 can be read per stage, and counters for what each CSV contained.
+ *
+ * <pre>
+ *   upload.stage{stage}     multipart-read, csv-parse, template-open, sanitize-vml,
+ *                           evaluate, write, flush
+ *   upload.mapping{sheet}   cell writes recorded for one template sheet
+ * </pre>
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String MULTIPART_READ = "multipart-read";
+    public static final String CSV_PARSE = "csv-parse";
+    public static final String TEMPLATE_OPEN = "template-open";
+    public static final String SANITIZE_VML = "sanitize-vml";
+    public static final String EVALUATE = "evaluate";
+    public static final String WRITE = "write";
+    public static final String FLUSH = "flush";
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, Timer> stages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> mappings = new ConcurrentHashMap<>();
+
+    private final Counter csvRows;
+    private final Counter infeedBuses;
+    private final Counter secondLines;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.csvRows = Counter.builder("upload.csv.rows")
+                .description("CSV rows read by uploads")
+                .register(registry);
+        this.infeedBuses = Counter.builder("upload.csv.infeed-buses")
+                .description("Infeed buses parsed from uploaded CSVs")
+                .register(registry);
+        this.secondLines = Counter.builder("upload.csv.second-lines")
+                .description("Second line impedances parsed from uploaded CSVs")
+                .register(registry);
+    }
+
+    /**
+     * Timer of one pipeline stage
+     */
+    public Timer stage(String stage) {
+        return stages.computeIfAbsent(stage, s -> Timer.builder("upload.stage")
+                .tag("stage", s)
+                .description("Time spent in one stage of the upload pipeline")
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Timer of the cell mapping into one template sheet
+     */
+    public Timer mapping(String sheet) {
+        return mappings.computeIfAbsent(sheet, s -> Timer.builder("upload.mapping")
+                .tag("sheet", s)
+                .description("Time spent mapping values into one template sheet")
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void record(String stage, long startNanos) {
+        stage(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordMapping(String sheet, long startNanos) {
+        mapping(sheet).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count what one parsed CSV contained
+     */
+    public void countCsv(int rows, int buses, int lines) {
+        csvRows.increment(rows);
+        infeedBuses.increment(buses);
+        secondLines.increment(lines);
+    }
+}
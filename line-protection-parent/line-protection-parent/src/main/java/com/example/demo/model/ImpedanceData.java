@@ -0,0 +1,33 @@
+package com.example.demo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Impedances from the APA IMPEDANCES TAB section: the protected line and the
+ * second lines out of the remote bus, in CSV order
+ */
+public final class ImpedanceData {
+
+    private LineImpedance firstLine;
+    private final List<LineImpedance> secondLines = new ArrayList<>();
+
+    /**
+     * Protected line impedance, or null when the CSV has none
+     */
+    public LineImpedance getFirstLine() {
+        return firstLine;
+    }
+
+    public void setFirstLine(LineImpedance firstLine) {
+        this.firstLine = firstLine;
+    }
+
+    public List<LineImpedance> getSecondLines() {
+        return secondLines;
+    }
+
+    public void addSecondLine(LineImpedance line) {
+        secondLines.add(line);
+    }
+}
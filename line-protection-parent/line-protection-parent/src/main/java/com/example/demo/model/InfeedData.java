@@ -0,0 +1,30 @@
+package com.example.demo.model;
+
+/**
+ * Fault current contribution read for one infeed bus. Either value may be
+ * {@link Measurements#MISSING} or {@link Measurements#INFINITE}.
+ */
+public final class InfeedData {
+
+    private final double magnitude;
+    private final double angle;
+
+    public InfeedData(double magnitude, double angle) {
+        this.magnitude = magnitude;
+        this.angle = angle;
+    }
+
+    /**
+     * Fault current magnitude in amps
+     */
+    public double getMagnitude() {
+        return magnitude;
+    }
+
+    /**
+     * Fault current angle in degrees
+     */
+    public double getAngle() {
+        return angle;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo.model;
+
+/**
+ * Positive/zero sequence impedance and length of one line. Any value may be
+ * {@link Measurements#MISSING} or {@link Measurements#INFINITE}.
+ */
+public final class LineImpedance {
+
+    private final double r1;
+    private final double x1;
+    private final double r0;
+    private final double x0;
+    private final double miles;
+    private final String cktNumber; // CKT name written to yellow cell (col D, excelRow+5), e.g. "YANDELL-22"
+
+    public LineImpedance(double r1, double x1, double r0, double x0, double miles, String cktNumber) {
+        this.r1 = r1;
+        this.x1 = x1;
+        this.r0 = r0;
+        this.x0 = x0;
+        this.miles = miles;
+        this.cktNumber = cktNumber == null ? "" : cktNumber;
+    }
+
+    public double getR1() {
+        return r1;
+    }
+
+    public double getX1() {
+        return x1;
+    }
+
+    public double getR0() {
+        return r0;
+    }
+
+    public double getX0() {
+        return x0;
+    }
+
+    public double getMiles() {
+        return miles;
+    }
+
+    /**
+     * CAPE circuit name, e.g. "YANDELL-22", or "" when the CSV has none
+     */
+    public String getCktNumber() {
+        return cktNumber;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.demo.model;
+
+/**
+ * Markers used by the fault-study model for values that are not plain
+ * numbers. A value absent from the CSV is NaN; CAPE's "INF" / "Infinite"
+ * (e.g. an open zero-sequence path) is positive infinity.
+ */
+public final class Measurements {
+
+    public static final double MISSING = Double.NaN;
+    public static final double INFINITE = Double.POSITIVE_INFINITY;
+
+    private Measurements() {
+    }
+
+    public static boolean isMissing(double v) {
+        return Double.isNaN(v);
+    }
+
+    public static boolean isInfinite(double v) {
+        return Double.isInfinite(v);
+    }
+
+    /**
+     * The value, or 0 when it is missing
+     */
+    public static double orZero(double v) {
+        return Double.isNaN(v) ? 0 : v;
+    }
+}
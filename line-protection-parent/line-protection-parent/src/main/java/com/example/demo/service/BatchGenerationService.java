@@ -0,0 +1,272 @@
+package com.example.demo.service;
+
+import com.example.demo.formula.ComputedSettings;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates many calculation sheets at once on a fixed worker pool shared by
+ * all batch requests, so concurrent batches never run more than the pool size
+ * of generations in parallel. Results are zipped as they complete, and a
+ * batch keeps at most the pool size of items ahead of the ZIP writer, so a
+ * slow client holds back generation instead of piling finished workbooks up
+ * on the heap. A batch-status.json entry closes the archive with the
+ * outcome of every item.
+ */
+@Service
+public class BatchGenerationService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchGenerationService.class);
+
+    public static final String STATUS_ENTRY = "batch-status.json";
+
+    private final CalculationSheetGenerator generator;
+    private final SubmissionRecorder recorder;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor workers;
+    private final int maxItems;
+
+    public BatchGenerationService(CalculationSheetGenerator generator,
+                                  SubmissionRecorder recorder,
+                                  ObjectMapper objectMapper,
+                                  @Value("${batch.workers:0}") int workers,
+                                  @Value("${batch.max-items:200}") int maxItems) {
+        this.generator = generator;
+        this.recorder = recorder;
+        this.objectMapper = objectMapper;
+        this.maxItems = maxItems;
+
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNo = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "batch-gen-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Batch generation pool: {} workers, at most {} items per batch", size, maxItems);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Generate every item and write a ZIP of the workbooks plus batch-status.json to out
+     */
+    public void run(List<Item> items, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CompletionService<Result> completion = new ExecutorCompletionService<>(workers);
+        List<Future<Result>> pending = new ArrayList<>(items.size());
+        int ahead = Math.min(workers.getMaximumPoolSize(), items.size());
+        while (pending.size() < ahead) {
+            submit(completion, pending, items);
+        }
+
+        List<Result> results = new ArrayList<>(items.size());
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int done = 0; done < items.size(); done++) {
+                Result r = completion.take().get();
+                results.add(r);
+                if (r.workbook != null) {
+                    writeStored(zip, r.fileName, r.workbook);
+                    // Release the buffer as soon as it is on the wire
+                    r.workbook = null;
+                }
+                // Only now that one is written does the next item start
+                if (pending.size() < items.size()) {
+                    submit(completion, pending, items);
+                }
+            }
+
+            results.sort(Comparator.comparingInt(r -> r.index));
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("items", results.size());
+            status.put("succeeded", results.stream().filter(r -> r.error == null).count());
+            status.put("failed", results.stream().filter(r -> r.error != null).count());
+            status.put("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            status.put("results", results.stream().map(Result::describe).toList());
+
+            zip.putNextEntry(new ZipEntry(STATUS_ENTRY));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(status));
+            zip.closeEntry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.forEach(f -> f.cancel(true));
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            // generate() reports failures in its result, so this is unexpected
+            pending.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Batch worker failed", e.getCause());
+        } catch (IOException e) {
+            // Client went away; stop work that nobody will receive
+            pending.forEach(f -> f.cancel(true));
+            throw e;
+        }
+        log.info("Batch of {} items finished in {} ms", items.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void submit(CompletionService<Result> completion, List<Future<Result>> pending, List<Item> items) {
+        int index = pending.size();
+        Item item = items.get(index);
+        pending.add(completion.submit(() -> generate(index, item)));
+    }
+
+    private Result generate(int index, Item item) {
+        long t0 = System.nanoTime();
+        Result r = new Result(index, item.getName(), String.format("%03d_%s.xlsm", index + 1, safeName(item.getName())));
+        CalculationSheetGenerator.PreparedSheet sheet = null;
+        try {
+            WorkbookBuffer buf = new WorkbookBuffer();
+            sheet = generator.prepare(item.getFormData(), item.getCsv(), false);
+            sheet.writeTo(buf);
+            r.settings = sheet.getSettings();
+            r.workbook = buf;
+            r.size = buf.size();
+        } catch (Exception e) {
+            log.warn("Batch item {} ('{}') failed: {}", index + 1, item.getName(), e.toString());
+            r.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            sheet = null;
+        }
+        r.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        try {
+            recorder.record(objectMapper.writeValueAsString(item.getFormData()), item.getFormData(), item.getName(), sheet, r.error);
+        } catch (IOException e) {
+            log.warn("Batch item {} not recorded: {}", index + 1, e.toString());
+        }
+        return r;
+    }
+
+    /**
+     * Workbooks are already compressed, so store them instead of deflating again
+     */
+    private static void writeStored(ZipOutputStream zip, String name, WorkbookBuffer data) throws IOException {
+        ZipEntry e = new ZipEntry(name);
+        e.setMethod(ZipEntry.STORED);
+        e.setSize(data.size());
+        e.setCompressedSize(data.size());
+        e.setCrc(data.crc());
+        zip.putNextEntry(e);
+        data.writeTo(zip);
+        zip.closeEntry();
+    }
+
+    /**
+     * Holds one finished workbook until its turn in the ZIP, read in place rather than copied out
+     */
+    private static final class WorkbookBuffer extends ByteArrayOutputStream {
+
+        WorkbookBuffer() {
+            super(1 << 20);
+        }
+
+        long crc() {
+            CRC32 crc = new CRC32();
+            crc.update(buf, 0, count);
+            return crc.getValue();
+        }
+    }
+
+    private static String safeName(String name) {
+        String base = name == null ? "" : name;
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) base = base.substring(0, dot);
+        base = base.replaceAll("[^A-Za-z0-9._-]+", "_");
+        return base.isEmpty() ? "sheet" : base;
+    }
+
+    /**
+     * One submission of a batch: its form fields and CAPE export, read from
+     * where it lies (an upload part, or an archive entry in memory)
+     */
+    public static final class Item {
+
+        private final String name;
+        private final Map<String, String> formData;
+        private final InputStreamSource csv;
+
+        public Item(String name, Map<String, String> formData, InputStreamSource csv) {
+            this.name = name;
+            this.formData = formData;
+            this.csv = csv;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, String> getFormData() {
+            return formData;
+        }
+
+        public InputStreamSource getCsv() {
+            return csv;
+        }
+    }
+
+    private static final class Result {
+
+        private final int index;
+        private final String name;
+        private final String fileName;
+        private WorkbookBuffer workbook;
+        private long size;
+        private long millis;
+        private String error;
+        private ComputedSettings settings;
+
+        Result(int index, String name, String fileName) {
+            this.index = index;
+            this.name = name;
+            this.fileName = fileName;
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("item", index + 1);
+            m.put("name", name);
+            m.put("status", error == null ? "SUCCESS" : "FAILED");
+            if (error == null) {
+                m.put("file", fileName);
+                m.put("size", size);
+                if (settings != null) {
+                    m.put("settings", settings.getValues());
+                }
+            } else {
+                m.put("error", error);
+            }
+            m.put("millis", millis);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import com.example.demo.csv.CapeCsvData;
+import com.example.demo.csv.CapeCsvParser;
+import com.example.demo.csv.NumberScanner;
+import com.example.demo.mapping.CellMappingService;
+import com.example.demo.mapping.MappedField;
+import com.example.demo.model.ImpedanceData;
+import com.example.demo.model.InfeedData;
+import com.example.demo.model.LineImpedance;
+import com.example.demo.model.Measurements;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The fault-study values of a CAPE export as plain data: the Fault Analysis
+ * fields of the cell mapping, the infeed buses and the line impedances. No
+ * template or workbook is involved, so a call costs one pass over the CSV.
+ */
+@Service
+public class CalculationService {
+
+    static final String FAULT_ANALYSIS = "4) Fault Analysis";
+
+    private final CellMappingService cellMappings;
+    private final CapeCsvParser csvParser;
+
+    private volatile List<MappedField> faultFields;
+    private volatile int csvRowsNeeded;
+
+    public CalculationService(CellMappingService cellMappings, CapeCsvParser csvParser) {
+        this.cellMappings = cellMappings;
+        this.csvParser = csvParser;
+    }
+
+    /**
+     * Parse one CAPE export and return its values, keyed as the calculation sheet labels them
+     */
+    public Map<String, Object> calculate(Map<String, String> formData, InputStream csvIn) throws Exception {
+        List<MappedField> fields = faultFields();
+
+        CapeCsvData csv;
+        try (Reader in = new InputStreamReader(csvIn, StandardCharsets.UTF_8)) {
+            csv = csvParser.parse(in, csvRowsNeeded);
+        }
+        if (csv.getRowCount() == 0) {
+            throw new IllegalArgumentException("CSV empty");
+        }
+
+        Map<String, Object> faultAnalysis = new LinkedHashMap<>();
+        for (MappedField f : fields) {
+            faultAnalysis.put(f.getLabel().isEmpty() ? f.getCell() : f.getLabel(), value(f.resolve(formData, csv)));
+        }
+
+        List<Map<String, Object>> infeed = new ArrayList<>();
+        for (Map.Entry<Integer, InfeedData> e : new TreeMap<>(csv.getInfeed()).entrySet()) {
+            Map<String, Object> bus = new LinkedHashMap<>();
+            bus.put("bus", e.getKey());
+            bus.put("magnitude", number(e.getValue().getMagnitude()));
+            bus.put("angle", number(e.getValue().getAngle()));
+            infeed.add(bus);
+        }
+
+        ImpedanceData impedanceData = csv.getImpedance();
+        Map<String, Object> impedance = new LinkedHashMap<>();
+        impedance.put("firstLine", impedanceData.getFirstLine() == null ? null : line(impedanceData.getFirstLine()));
+        impedance.put("secondLines", impedanceData.getSecondLines().stream().map(CalculationService::line).toList());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mapping", cellMappings.getVersion());
+        result.put("faultAnalysis", faultAnalysis);
+        result.put("infeed", infeed);
+        result.put("impedance", impedance);
+        return result;
+    }
+
+    private List<MappedField> faultFields() throws Exception {
+        List<MappedField> fields = faultFields;
+        if (fields == null) {
+            fields = cellMappings.fieldsFor(FAULT_ANALYSIS);
+            int rows = 0;
+            for (MappedField f : fields) {
+                rows = Math.max(rows, f.getCsvRow() + 1);
+            }
+            csvRowsNeeded = rows;
+            faultFields = fields;
+        }
+        return fields;
+    }
+
+    private static Map<String, Object> line(LineImpedance l) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("r1", number(l.getR1()));
+        m.put("x1", number(l.getX1()));
+        m.put("r0", number(l.getR0()));
+        m.put("x0", number(l.getX0()));
+        m.put("miles", number(l.getMiles()));
+        m.put("ckt", l.getCktNumber());
+        return m;
+    }
+
+    /**
+     * Mapped CSV or form value the way the workbook would store it: a number
+     * when the text is numeric, otherwise the text; null when blank
+     */
+    private static Object value(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return null;
+        }
+        double d = NumberScanner.parseExact(raw);
+        return Double.isNaN(d) ? raw : number(d);
+    }
+
+    /**
+     * JSON has no NaN or infinity: missing values become null, infinite ones the CAPE marker "INF"
+     */
+    private static Object number(double d) {
+        if (Measurements.isMissing(d)) {
+            return null;
+        }
+        return Measurements.isInfinite(d) ? "INF" : d;
+    }
+}
@@ -0,0 +1,504 @@
+package com.example.demo.service;
+
+import com.example.demo.csv.CapeCsvData;
+import com.example.demo.csv.CapeCsvParser;
+import com.example.demo.formula.ComputedSettings;
+import com.example.demo.formula.FormulaEvaluationService;
+import com.example.demo.mapping.CellMappingPlan;
+import com.example.demo.mapping.CellMappingService;
+import com.example.demo.mapping.MappingTrace;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.model.ImpedanceData;
+import com.example.demo.model.InfeedData;
+import com.example.demo.model.LineImpedance;
+import com.example.demo.model.Measurements;
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.GenerationMode;
+import com.example.demo.template.StreamingWorkbookWriter;
+import com.example.demo.template.TemplateCache;
+import com.example.demo.template.TemplateSheet;
+import com.example.demo.template.WorkbookPatch;
+import com.example.demo.template.ZipTimestamps;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The calculation sheet pipeline: parse the CAPE export, record every cell
+ * write against the cached template and render the workbook. Holds no
+ * per-request state, so one instance serves concurrent requests; the template
+ * snapshot and compiled mapping it reads are immutable.
+ */
+@Service
+public class CalculationSheetGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(CalculationSheetGenerator.class);
+
+    private final TemplateCache templateCache;
+    private final CellMappingService cellMappings;
+    private final CapeCsvParser csvParser;
+    private final StreamingWorkbookWriter streamingWriter;
+    private final ResultCache resultCache;
+    private final FormulaEvaluationService formulas;
+    private final GenerationGate gate;
+    private final PipelineMetrics metrics;
+    private final GenerationMode generationMode;
+    private final double traceSampleRate;
+
+    public CalculationSheetGenerator(TemplateCache templateCache,
+                                     CellMappingService cellMappings,
+                                     CapeCsvParser csvParser,
+                                     StreamingWorkbookWriter streamingWriter,
+                                     ResultCache resultCache,
+                                     FormulaEvaluationService formulas,
+                                     GenerationGate gate,
+                                     PipelineMetrics metrics,
+                                     @Value("${generation.mode:poi}") GenerationMode generationMode,
+                                     @Value("${generation.trace.sample-rate:0}") double traceSampleRate) {
+        this.templateCache = templateCache;
+        this.cellMappings = cellMappings;
+        this.csvParser = csvParser;
+        this.streamingWriter = streamingWriter;
+        this.resultCache = resultCache;
+        this.formulas = formulas;
+        this.gate = gate;
+        this.metrics = metrics;
+        this.generationMode = generationMode;
+        this.traceSampleRate = traceSampleRate;
+    }
+
+    /**
+     * A calculation sheet ready to be written: either a cached result or a
+     * recorded patch that is rendered (and cached) as it is written
+     */
+    @FunctionalInterface
+    public interface PreparedSheet {
+        void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * Key outputs evaluated on the server, or null when formula evaluation is off
+         */
+        default ComputedSettings getSettings() {
+            return null;
+        }
+
+        /**
+         * The cell writes behind this sheet, to store as its delta; a cached
+         * result is mapped again on the first call
+         */
+        default WorkbookPatch getPatch() throws Exception {
+            return null;
+        }
+    }
+
+    /**
+     * Generate the calculation sheet for one form submission and CAPE export
+     * into out; returns its computed settings, or null when formula evaluation is off
+     */
+    public ComputedSettings generate(Map<String, String> formData, byte[] csv, OutputStream out) throws Exception {
+        PreparedSheet sheet = prepare(formData, csv);
+        sheet.writeTo(out);
+        return sheet.getSettings();
+    }
+
+    /**
+     * Look the submission up in the result cache, or parse and map it so that
+     * only rendering is left. Input errors surface here, before any output.
+     * With the generation gate on, mapping and evaluation hold a permit, and
+     * so does rendering into memory when the gate buffers.
+     */
+    public PreparedSheet prepare(Map<String, String> formData, byte[] csv) throws Exception {
+        return prepare(formData, new ByteArrayResource(csv), false);
+    }
+
+    /**
+     * Same as {@link #prepare(Map, byte[])} for a CSV read where it lies, such
+     * as an upload spilled to disk: it is opened once to hash it for the
+     * result cache and again to map it. traced asks for a mapping trace of
+     * this request, which is otherwise only written for the sampled share.
+     */
+    public PreparedSheet prepare(Map<String, String> formData, InputStreamSource csv, boolean traced) throws Exception {
+        CachedTemplate template = templateCache.get();
+        CellMappingPlan plan = cellMappings.planFor(template);
+
+        boolean evaluate = formulas.isEnabled();
+        // Evaluated workbooks carry different cached formula values, so they are cached apart
+        String renderer = evaluate ? generationMode.name() + "+formulas" : generationMode.name();
+        String key;
+        try (InputStream in = csv.getInputStream()) {
+            key = resultCache.key(formData, in, template.getVersion(), plan.getRowsVersion(), renderer);
+        }
+        ResultCache.Entry cached = resultCache.get(key);
+        ComputedSettings known = evaluate ? formulas.recall(key) : null;
+        if (cached != null && (!evaluate || known != null)) {
+            log.info("Result cache hit {} ({} bytes), skipping generation", key.substring(0, 12), cached.size());
+            return new Prepared(cached::writeTo, known,
+                    () -> buildPatch(template, plan, formData, csv.getInputStream(), null));
+        }
+
+        MappingTrace trace = traced ? new MappingTrace(template, "header")
+                : (traceSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < traceSampleRate)
+                ? new MappingTrace(template, "sampled") : null;
+        if (gate.isEnabled()) {
+            return gate.run(() -> gated(build(key, template, plan, formData, csv, trace)));
+        }
+        return build(key, template, plan, formData, csv, trace);
+    }
+
+    private PreparedSheet build(String key, CachedTemplate template, CellMappingPlan plan,
+                                Map<String, String> formData, InputStreamSource csv, MappingTrace trace) throws Exception {
+        return fromPatch(key, buildPatch(template, plan, formData, csv.getInputStream(), trace));
+    }
+
+    /**
+     * Render a stored patch as {@link #prepare} rendered it first, with the
+     * current template and renderer but not through the result cache
+     */
+    public PreparedSheet replay(WorkbookPatch patch) throws Exception {
+        if (gate.isEnabled()) {
+            return gate.run(() -> gated(fromPatch(null, patch)));
+        }
+        return fromPatch(null, patch);
+    }
+
+    /**
+     * Everything after mapping; a null key keeps the result out of the caches
+     */
+    private PreparedSheet fromPatch(String key, WorkbookPatch patch) throws Exception {
+        if (formulas.isEnabled()) {
+            return evaluated(key, patch);
+        }
+        return new Prepared(out -> {
+            ResultCache.Capture capture = resultCache.capture(key, out);
+            renderTo(patch, capture);
+            capture.flush();
+            capture.commit();
+        }, null, () -> patch);
+    }
+
+    /**
+     * A sheet prepared under a gate permit: rendered into memory when the gate
+     * buffers, leaving only a copy to the client, otherwise written as usual
+     */
+    private PreparedSheet gated(PreparedSheet sheet) throws IOException {
+        if (!gate.isBuffered()) {
+            return sheet;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+        sheet.writeTo(buffer);
+        return new Prepared(out -> buffer.writeTo(out), sheet.getSettings(), sheet::getPatch);
+    }
+
+    /**
+     * Evaluate the patch's dependent formulas up front, so the settings are
+     * known before any output. In POI mode the evaluated workbook itself is
+     * written, carrying the computed values; the streaming renderer cannot
+     * hold them, so there evaluation runs on a throwaway POI copy.
+     */
+    private PreparedSheet evaluated(String key, WorkbookPatch patch) throws Exception {
+        if (generationMode == GenerationMode.STREAMING) {
+            ComputedSettings settings;
+            try (XSSFWorkbook wb = openWorkbook(patch)) {
+                patch.applyTo(wb);
+                long t0 = System.nanoTime();
+                settings = formulas.evaluate(wb, patch);
+                metrics.record(PipelineMetrics.EVALUATE, t0);
+            }
+            if (key != null) {
+                formulas.remember(key, settings);
+            }
+            return new Prepared(out -> {
+                ResultCache.Capture capture = resultCache.capture(key, out);
+                renderTo(patch, capture);
+                capture.flush();
+                capture.commit();
+            }, settings, () -> patch);
+        }
+
+        XSSFWorkbook wb = openWorkbook(patch);
+        ComputedSettings settings;
+        try {
+            patch.applyTo(wb);
+            long t0 = System.nanoTime();
+            settings = formulas.evaluate(wb, patch);
+            metrics.record(PipelineMetrics.EVALUATE, t0);
+        } catch (Exception e) {
+            wb.close();
+            throw e;
+        }
+        if (key != null) {
+            formulas.remember(key, settings);
+        }
+        return new Prepared(out -> {
+            log.debug("Writing evaluated workbook ({} mode)", generationMode);
+            try (wb) {
+                ResultCache.Capture capture = resultCache.capture(key, out);
+                // Only dependent formulas were evaluated; Excel still recalculates everything on open
+                wb.setForceFormulaRecalculation(true);
+                long t0 = System.nanoTime();
+                write(wb, capture);
+                metrics.record(PipelineMetrics.WRITE, t0);
+                capture.flush();
+                capture.commit();
+            }
+        }, settings, () -> patch);
+    }
+
+    /**
+     * Render a patch into a response stream. Rendering failures other than I/O
+     * are logged, as the response has usually been committed by then.
+     */
+    public void renderTo(WorkbookPatch patch, OutputStream out) throws IOException {
+        log.debug("Writing workbook ({} mode)", generationMode);
+        try {
+            render(patch, out);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Workbook rendering failed", e);
+            throw new IllegalStateException("Workbook rendering failed", e);
+        }
+    }
+
+    /**
+     * Every cell write for one submission, without opening a workbook
+     */
+    public WorkbookPatch buildPatch(Map<String, String> formData, InputStream csvIn) throws Exception {
+        CachedTemplate template = templateCache.get();
+        return buildPatch(template, cellMappings.planFor(template), formData, csvIn, null);
+    }
+
+    /**
+     * Record the cell writes; trace, when not null, gets every one of them
+     * and is emitted at the end
+     */
+    private WorkbookPatch buildPatch(CachedTemplate template, CellMappingPlan plan,
+                                     Map<String, String> formData, InputStream csvIn, MappingTrace trace) throws Exception {
+        // Cell writes are recorded against the cached template, then rendered
+        WorkbookPatch patch = new WorkbookPatch(template);
+
+        // Single pass over the CSV; only the rows the mapping reads are kept
+        CapeCsvData csv;
+        long t0 = System.nanoTime();
+        try (Reader in = new InputStreamReader(csvIn, StandardCharsets.UTF_8)) {
+            csv = csvParser.parse(in, plan.getCsvRowsNeeded());
+        }
+        metrics.record(PipelineMetrics.CSV_PARSE, t0);
+        if (csv.getRowCount() == 0) {
+            throw new IllegalStateException("CSV empty");
+        }
+        if (csv.getInfeedStartRow() < 0 || csv.getImpedanceStartRow() < 0) {
+            log.warn("CSV section missing: INFEED TAB at row {}, APA IMPEDANCES TAB at row {}",
+                    csv.getInfeedStartRow(), csv.getImpedanceStartRow());
+        }
+
+        Map<Integer, InfeedData> infeedMap = csv.getInfeed();
+        ImpedanceData impedanceData = csv.getImpedance();
+        metrics.countCsv(csv.getRowCount(), infeedMap.size(), impedanceData.getSecondLines().size());
+
+        // ===== DATA ENTRY + FAULT ANALYSIS: compiled cell mapping ===== //
+        for (int k = 0; k < plan.getSheetCount(); k++) {
+            long mapStart = System.nanoTime();
+            plan.applySheet(k, patch, formData, csv, trace);
+            metrics.recordMapping(template.getSheetAt(plan.getSheetIndex(k)).getName(), mapStart);
+        }
+
+        // ===== ASSIGNING VALUES IN TAB INFEED ===== //
+        TemplateSheet InfeedTab = template.getSheet("5) Infeed");
+        if (InfeedTab == null) {
+            log.warn("Sheet '5) Infeed' not found in template");
+        } else {
+            // Always fill all 12 buses, default to 0
+            long mapStart = System.nanoTime();
+
+            for (int busNum = 1; busNum <= 12; busNum++) {
+                int excelRow = 14 + busNum;
+                String magCell = "R" + excelRow;
+                String angCell = "T" + excelRow;
+
+                InfeedData data = infeedMap.get(busNum);
+                double magnitude = (data == null) ? 0 : Measurements.orZero(data.getMagnitude());
+                double angle     = (data == null) ? 0 : Measurements.orZero(data.getAngle());
+
+                if (trace != null) {
+                    trace.write(InfeedTab.getIndex(), magCell, "csv:infeed:bus-" + busNum + ":magnitude", magnitude);
+                    trace.write(InfeedTab.getIndex(), angCell, "csv:infeed:bus-" + busNum + ":angle", angle);
+                }
+                patch.write(InfeedTab, magCell, magnitude);
+                patch.write(InfeedTab, angCell, angle);
+            }
+
+            metrics.recordMapping(InfeedTab.getName(), mapStart);
+        }
+
+        // ===== ASSIGNING VALUES IN TAB ASPEN IMPEDANCES ===== //
+        TemplateSheet APAImpedancesTab = template.getSheet("3) Aspen Impedances");
+        if (APAImpedancesTab == null) {
+            log.warn("Sheet '3) Aspen Impedances' not found in template");
+        } else {
+            long mapStart = System.nanoTime();
+
+            // First Line Impedance
+            LineImpedance firstLine = impedanceData.getFirstLine();
+            if (firstLine != null) {
+                writeImpedance(patch, trace, APAImpedancesTab, "E6", firstLine.getR1(), 0, "r1");
+                writeImpedance(patch, trace, APAImpedancesTab, "F6", firstLine.getX1(), 0, "x1");
+                writeImpedance(patch, trace, APAImpedancesTab, "G6", firstLine.getR0(), 0, "r0");
+                writeImpedance(patch, trace, APAImpedancesTab, "H6", firstLine.getX0(), 0, "x0");
+                writeImpedance(patch, trace, APAImpedancesTab, "I6", firstLine.getMiles(), 0, "miles");
+            }
+
+            // -----------------------------------------------------------------------
+            // Second Line Impedances
+            //
+            // Template layout per section (8 sections total):
+            //
+            //   excelRow        → primary data entry row      (E/F/G/H/I columns)
+            //   excelRow + 1..4 → green formula/display rows  (auto-calculated)
+            //   excelRow + 5    → "Not Used" summary row      ← MUST also be written
+            //   excelRow + 6    → "Bus CAPE CKT number" row   ← D column gets CKT ID
+            //   excelRow + 7    → section separator / empty
+            //
+            // Without explicitly writing the "Not Used" row (excelRow+5), the
+            // template retains its previous / default value, causing the mismatch
+            // visible in the screenshot (e.g. row 44 showing YANDELL-26 data
+            // instead of HOYRD data).
+            // -----------------------------------------------------------------------
+            int[] excelRows = {15, 23, 31, 39, 47, 55, 63, 71}; // primary data rows for 8 second lines
+
+            for (int i = 0; i < Math.min(impedanceData.getSecondLines().size(), excelRows.length); i++) {
+                LineImpedance line = impedanceData.getSecondLines().get(i);
+                int excelRow    = excelRows[i];
+                int yellowCell  = excelRow + 5; // yellow blank cell → write CKT name e.g. "YANDELL-22"
+
+                // Write impedance values to the primary data-entry row only
+                writeImpedance(patch, trace, APAImpedancesTab, "E" + excelRow, line.getR1(), i + 1, "r1");
+                writeImpedance(patch, trace, APAImpedancesTab, "F" + excelRow, line.getX1(), i + 1, "x1");
+                writeImpedance(patch, trace, APAImpedancesTab, "G" + excelRow, line.getR0(), i + 1, "r0");
+                writeImpedance(patch, trace, APAImpedancesTab, "H" + excelRow, line.getX0(), i + 1, "x0");
+                writeImpedance(patch, trace, APAImpedancesTab, "I" + excelRow, line.getMiles(), i + 1, "miles");
+
+                // Write CKT name (e.g. "YANDELL-22") into the yellow cell at D(excelRow+5)
+                if (line.getCktNumber() != null && !line.getCktNumber().isBlank()) {
+                    if (trace != null) {
+                        trace.write(APAImpedancesTab.getIndex(), "D" + yellowCell,
+                                "csv:second-line-" + (i + 1) + ":ckt", line.getCktNumber());
+                    }
+                    patch.write(APAImpedancesTab, "D" + yellowCell, line.getCktNumber());
+                }
+            }
+
+            metrics.recordMapping(APAImpedancesTab.getName(), mapStart);
+        }
+
+        log.info("Mapped {} cells from {} CSV rows ({} infeed buses, {} second lines)", patch.size(),
+                csv.getRowCount(), infeedMap.size(), impedanceData.getSecondLines().size());
+        if (trace != null) {
+            trace.emit();
+        }
+        return patch;
+    }
+
+    /**
+     * Write one impedance value unless missing; line is 0 for the first line,
+     * otherwise the 1-based second line
+     */
+    private static void writeImpedance(WorkbookPatch patch, MappingTrace trace, TemplateSheet sheet,
+                                       String cell, double value, int line, String field) {
+        if (trace != null && !Double.isNaN(value)) {
+            String source = (line == 0) ? "csv:first-line:" + field : "csv:second-line-" + line + ":" + field;
+            trace.write(sheet.getIndex(), cell, source, value);
+        }
+        patch.writeIfPresent(sheet, cell, value);
+    }
+
+    /**
+     * Produce the workbook bytes for a patch, either through POI or by
+     * streaming the template parts with only the targeted sheets rewritten
+     */
+    public void render(WorkbookPatch patch, OutputStream out) throws Exception {
+        if (generationMode == GenerationMode.STREAMING) {
+            long t0 = System.nanoTime();
+            streamingWriter.write(patch, out);
+            metrics.record(PipelineMetrics.WRITE, t0);
+            return;
+        }
+        try (XSSFWorkbook wb = openWorkbook(patch)) {
+            patch.applyTo(wb);
+
+            // Ask Excel to do a full recalc when the user opens the file
+            wb.setForceFormulaRecalculation(true);
+            long t0 = System.nanoTime();
+            write(wb, out);
+            metrics.record(PipelineMetrics.WRITE, t0);
+        }
+    }
+
+    /**
+     * Write a POI workbook with fixed entry times, so the same patch always gives the same bytes
+     */
+    private static void write(XSSFWorkbook wb, OutputStream out) throws IOException {
+        try (ZipArchiveOutputStream zip = ZipTimestamps.fixedTimeStream(out)) {
+            wb.write(zip);
+        }
+    }
+
+    private XSSFWorkbook openWorkbook(WorkbookPatch patch) throws Exception {
+        long t0 = System.nanoTime();
+        XSSFWorkbook wb = templateCache.openWorkbook(patch.getTemplate());
+        metrics.record(PipelineMetrics.TEMPLATE_OPEN, t0);
+        return wb;
+    }
+
+    private static final class Prepared implements PreparedSheet {
+
+        private final PreparedSheet writer;
+        private final ComputedSettings settings;
+        private final PatchSource source;
+        private WorkbookPatch patch;
+
+        Prepared(PreparedSheet writer, ComputedSettings settings, PatchSource source) {
+            this.writer = writer;
+            this.settings = settings;
+            this.source = source;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            writer.writeTo(out);
+        }
+
+        @Override
+        public ComputedSettings getSettings() {
+            return settings;
+        }
+
+        @Override
+        public synchronized WorkbookPatch getPatch() throws Exception {
+            if (patch == null) {
+                patch = source.get();
+            }
+            return patch;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PatchSource {
+        WorkbookPatch get() throws Exception;
+    }
+}
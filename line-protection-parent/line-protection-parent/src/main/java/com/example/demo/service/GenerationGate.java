@@ -0,0 +1,105 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds how many workbook generations use the CPU at once. Request threads
+ * (virtual ones included) queue here in arrival order, so a burst waits its
+ * turn instead of thrashing the JVM; one that waits longer than the maximum
+ * is rejected. When disabled, work runs straight through.
+ *
+ * <p>A permit covers mapping and formula evaluation; the workbook is then
+ * written to the client after its release. With buffering on, the workbook
+ * is rendered into memory under the permit too, so writing it is only a copy,
+ * at the cost of holding every response in full on the heap.
+ */
+@Component
+public class GenerationGate {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationGate.class);
+
+    private final boolean enabled;
+    private final boolean buffered;
+    private final int permits;
+    private final long maxWaitNanos;
+    private final Semaphore semaphore;
+
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public GenerationGate(MeterRegistry registry,
+                          @Value("${generation.gate.enabled:false}") boolean enabled,
+                          @Value("${generation.gate.permits:0}") int permits,
+                          @Value("${generation.gate.max-wait:30s}") Duration maxWait,
+                          @Value("${generation.gate.buffer:false}") boolean buffered) {
+        this.enabled = enabled;
+        this.buffered = buffered;
+        this.permits = (permits > 0) ? permits : Runtime.getRuntime().availableProcessors();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.semaphore = new Semaphore(this.permits, true);
+
+        this.waitTimer = Timer.builder("generation.gate.wait")
+                .description("Time a generation waited for a CPU permit")
+                .register(registry);
+        this.rejected = Counter.builder("generation.gate.rejected")
+                .description("Generations rejected after waiting the maximum time for a permit")
+                .register(registry);
+        Gauge.builder("generation.gate.queued", semaphore, Semaphore::getQueueLength)
+                .description("Generations waiting for a CPU permit")
+                .register(registry);
+        Gauge.builder("generation.gate.active", this, g -> g.permits - g.semaphore.availablePermits())
+                .description("Generations holding a CPU permit")
+                .register(registry);
+
+        log.info("Generation gate {}: {} permits, max wait {}{}", enabled ? "enabled" : "disabled", this.permits, maxWait,
+                enabled && buffered ? ", rendering into memory" : "");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether workbooks are rendered into memory under the permit
+     */
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Run work once a permit is free
+     *
+     * @throws RejectedExecutionException when no permit frees up within the maximum wait
+     */
+    public <T> T run(Callable<T> work) throws Exception {
+        if (!enabled) {
+            return work.call();
+        }
+        long t0 = System.nanoTime();
+        boolean acquired = semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        waitTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            rejected.increment();
+            throw new RejectedExecutionException("No generation capacity within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+        }
+        try {
+            return work.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+}
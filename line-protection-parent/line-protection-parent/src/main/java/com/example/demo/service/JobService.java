@@ -0,0 +1,243 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import com.example.demo.entity.FormSubmission;
+import com.example.demo.formula.ComputedSettings;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous generation backed by form_submissions. A job is a
+ * FormSubmission row: it is saved as PROCESSING when accepted, generated on a
+ * bounded pool and moved to SUCCESS with its generatedFileName, or FAILED with
+ * an errorMessage. A queued job's CSV waits under jobs.dir until it has run. Finished workbooks are kept under jobs.dir, next to their
+ * computed settings when formula evaluation is on, for jobs.result-max-age;
+ * the row keeps the workbook's delta (see {@link WorkbookArchive}), so an
+ * expired or purged job's workbook can still be rebuilt.
+ */
+@Service
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    public static final String PROCESSING = "PROCESSING";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    private final CalculationSheetGenerator generator;
+    private final FormSubmissionRepository submissions;
+    private final StatusCounters counters;
+    private final WorkbookArchive archive;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor workers;
+    private final Path dir;
+    private final Duration resultMaxAge;
+
+    public JobService(CalculationSheetGenerator generator,
+                      FormSubmissionRepository submissions,
+                      StatusCounters counters,
+                      WorkbookArchive archive,
+                      ObjectMapper objectMapper,
+                      @Value("${jobs.workers:0}") int workers,
+                      @Value("${jobs.queue-capacity:100}") int queueCapacity,
+                      @Value("${jobs.dir:${java.io.tmpdir}/line-protection-jobs}") String dir,
+                      @Value("${jobs.result-max-age:7d}") Duration resultMaxAge) throws IOException {
+        this.generator = generator;
+        this.submissions = submissions;
+        this.counters = counters;
+        this.archive = archive;
+        this.objectMapper = objectMapper;
+        this.dir = Files.createDirectories(Paths.get(dir));
+        this.resultMaxAge = resultMaxAge;
+
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNo = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "job-gen-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Job pool: {} workers, queue of {}, results in {}", size, queueCapacity, this.dir);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Record a submission and queue its generation; returns the saved PROCESSING row
+     *
+     * @throws RejectedExecutionException when the queue is full; the row is then marked FAILED
+     * @throws IOException when the CSV cannot be stored for the job; the row is then marked FAILED
+     */
+    public FormSubmission submit(String formDataJson, Map<String, String> formData, String csvFileName,
+                                 InputStreamSource csv) throws IOException {
+        FormSubmission job = submissions.save(new FormSubmission(formDataJson, formData, csvFileName));
+        counters.added(job.getUploadedAt(), job.getStatus());
+
+        long id = job.getId();
+        // The job outlives the request and its upload, so the CSV waits in the job directory
+        Path csvCopy = dir.resolve("job-" + id + ".csv");
+        try (InputStream in = csv.getInputStream()) {
+            Files.copy(in, csvCopy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            finish(id, FAILED, null, "CSV not stored: " + e.getMessage(), null);
+            throw e;
+        }
+        try {
+            workers.execute(() -> run(id, formData, csvCopy));
+        } catch (RejectedExecutionException e) {
+            Files.deleteIfExists(csvCopy);
+            job.setStatus(FAILED);
+            job.setErrorMessage("Job queue full");
+            submissions.save(job);
+            counters.transitioned(job.getUploadedAt(), PROCESSING, FAILED);
+            throw e;
+        }
+        log.info("Job {} queued ({} waiting)", id, workers.getQueue().size());
+        return job;
+    }
+
+    public Optional<FormSubmission> find(long id) {
+        return submissions.findById(id);
+    }
+
+    /**
+     * Location of a finished job's workbook; empty for submissions without a
+     * result file, such as those recorded by /upload
+     */
+    public Optional<Path> resultPath(FormSubmission job) {
+        return Optional.ofNullable(job.getGeneratedFileName()).map(dir::resolve);
+    }
+
+    /**
+     * Computed settings stored with a finished job's workbook, if any
+     */
+    public Optional<Map<String, Object>> settings(FormSubmission job) {
+        if (job.getGeneratedFileName() == null) {
+            return Optional.empty();
+        }
+        Path file = settingsPath(job.getGeneratedFileName());
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(file.toFile(), new TypeReference<>() {}));
+        } catch (IOException e) {
+            log.warn("Settings of job {} unreadable: {}", job.getId(), e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Delete job files (workbooks, settings, partial files left by a crash)
+     * last written more than jobs.result-max-age ago, which also covers the
+     * files of rows removed by {@link SubmissionRetention}. Returns the files
+     * deleted; a non-positive max age keeps them all.
+     */
+    @Scheduled(cron = "${jobs.cleanup-cron:0 15 * * * *}")
+    public int purgeExpiredFiles() {
+        if (resultMaxAge.isZero() || resultMaxAge.isNegative()) {
+            return 0;
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(resultMaxAge));
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "job-*")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0 && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Job file {} not deleted: {}", file.getFileName(), e.toString());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Job files in {} not listed: {}", dir, e.toString());
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} job files older than {}", deleted, resultMaxAge);
+        }
+        return deleted;
+    }
+
+    private Path settingsPath(String fileName) {
+        return dir.resolve(fileName.substring(0, fileName.lastIndexOf('.')) + ".settings.json");
+    }
+
+    private void run(long id, Map<String, String> formData, Path csv) {
+        long t0 = System.nanoTime();
+        String fileName = "job-" + id + ".xlsm";
+        Path target = dir.resolve(fileName);
+        Path partial = dir.resolve(fileName + ".part");
+        try {
+            CalculationSheetGenerator.PreparedSheet sheet = generator.prepare(formData, new FileSystemResource(csv), false);
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                sheet.writeTo(out);
+            }
+            ComputedSettings settings = sheet.getSettings();
+            if (settings != null) {
+                objectMapper.writeValue(settingsPath(fileName).toFile(), settings.getValues());
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finish(id, SUCCESS, fileName, null, sheet);
+            log.info("Job {} finished in {} ms", id, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+        } catch (Exception e) {
+            log.warn("Job {} failed: {}", id, e.toString());
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // Best effort; a stale .part file is never served
+            }
+            finish(id, FAILED, null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), null);
+        } finally {
+            try {
+                Files.deleteIfExists(csv);
+            } catch (IOException e) {
+                log.warn("Job {} CSV not deleted: {}", id, e.toString());
+            }
+        }
+    }
+
+    private void finish(long id, String status, String fileName, String error,
+                        CalculationSheetGenerator.PreparedSheet sheet) {
+        FormSubmission job = submissions.findById(id)
+                .orElseThrow(() -> new IllegalStateException("Job " + id + " vanished"));
+        String previous = job.getStatus();
+        job.setStatus(status);
+        job.setGeneratedFileName(fileName);
+        job.setErrorMessage(error);
+        archive.attach(job, sheet);
+        submissions.save(job);
+        counters.transitioned(job.getUploadedAt(), previous, status);
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of generated workbooks. The key is a SHA-256 over
+ * the form fields (sorted by name), the CSV bytes and the template, mapping
+ * and rendering versions, so any change to an input or to the template
+ * produces a new key and stale entries simply age out.
+ *
+ * Two tiers: an in-memory LRU bounded by total bytes, and an optional
+ * directory bounded by total bytes that evicts the least recently used files.
+ * Each tier has its own limit per workbook; larger ones are not cached there.
+ */
+@Component
+public class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final String SUFFIX = ".xlsm";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // Capture buffer granularity: no regrowth copies, and at most one chunk trimmed on commit
+    private static final int CHUNK = 64 * 1024;
+
+    private final boolean enabled;
+    private final long memoryMaxBytes;
+    private final long memoryMaxEntryBytes;
+    private final Path diskDir;
+    private final long diskMaxBytes;
+    private final long diskMaxEntryBytes;
+
+    // Access-ordered, guarded by this
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter memoryEvictions;
+    private final Counter diskEvictions;
+    private final Counter memorySkips;
+    private final Counter diskSkips;
+
+    public ResultCache(MeterRegistry registry,
+                       @Value("${result-cache.enabled:true}") boolean enabled,
+                       @Value("${result-cache.memory-max-bytes:67108864}") long memoryMaxBytes,
+                       @Value("${result-cache.disk-dir:}") String diskDir,
+                       @Value("${result-cache.disk-max-bytes:1073741824}") long diskMaxBytes,
+                       @Value("${result-cache.disk-max-entry-bytes:67108864}") long diskMaxEntryBytes) throws IOException {
+        this.enabled = enabled;
+        this.memoryMaxBytes = memoryMaxBytes;
+        // One entry may not take more than a quarter of the memory tier
+        this.memoryMaxEntryBytes = Math.max(memoryMaxBytes / 4, 0);
+        this.diskDir = (enabled && !diskDir.isBlank()) ? Files.createDirectories(Paths.get(diskDir)) : null;
+        this.diskMaxBytes = diskMaxBytes;
+        this.diskMaxEntryBytes = Math.min(diskMaxEntryBytes, diskMaxBytes);
+        if (this.diskDir != null) {
+            diskBytes = scanDisk();
+        }
+
+        this.memoryHits = hitCounter(registry, "memory");
+        this.diskHits = hitCounter(registry, "disk");
+        this.misses = Counter.builder("result.cache.misses")
+                .description("Generations not found in the result cache")
+                .register(registry);
+        this.memoryEvictions = evictionCounter(registry, "memory");
+        this.diskEvictions = evictionCounter(registry, "disk");
+        this.memorySkips = skipCounter(registry, "memory");
+        this.diskSkips = skipCounter(registry, "disk");
+        Gauge.builder("result.cache.bytes", this, c -> c.memoryBytes())
+                .tag("tier", "memory")
+                .description("Bytes held by the result cache")
+                .register(registry);
+        Gauge.builder("result.cache.bytes", this, c -> c.diskBytes())
+                .tag("tier", "disk")
+                .description("Bytes held by the result cache")
+                .register(registry);
+
+        log.info("Result cache {}: memory {} bytes ({} per entry), disk {}", enabled ? "enabled" : "disabled",
+                memoryMaxBytes, memoryMaxEntryBytes, this.diskDir == null ? "off"
+                        : this.diskDir + " (" + diskMaxBytes + " bytes, " + this.diskMaxEntryBytes + " per entry)");
+    }
+
+    /**
+     * Cache key for one generation; the CSV is hashed as it is read
+     */
+    public String key(Map<String, String> formData, InputStream csv, String templateVersion, String mappingVersion,
+                      String renderer) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Map.Entry<String, String> f : new TreeMap<>(formData).entrySet()) {
+            field(md, f.getKey());
+            field(md, f.getValue() == null ? "" : f.getValue());
+        }
+        md.update((byte) 0);
+        byte[] chunk = new byte[8192];
+        for (int n; (n = csv.read(chunk)) > 0; ) {
+            md.update(chunk, 0, n);
+        }
+        field(md, templateVersion);
+        field(md, mappingVersion);
+        field(md, renderer);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Cached workbook for key, or null
+     */
+    public Entry get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            Entry hit = memory.get(key);
+            if (hit != null) {
+                memoryHits.increment();
+                return hit;
+            }
+        }
+        if (diskDir != null) {
+            Path file = diskDir.resolve(key + SUFFIX);
+            try {
+                Entry data = new Entry(List.of(Files.readAllBytes(file)));
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                diskHits.increment();
+                if (data.size() <= memoryMaxEntryBytes) {
+                    putMemory(key, data);
+                }
+                return data;
+            } catch (IOException e) {
+                // Not on disk (or evicted meanwhile)
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a finished workbook under key in each tier it fits
+     */
+    private void put(String key, Entry data) {
+        if (data.size() <= memoryMaxEntryBytes) {
+            putMemory(key, data);
+        } else {
+            skipped(memorySkips, "memory", memoryMaxEntryBytes);
+        }
+        if (diskDir == null) {
+            return;
+        }
+        if (data.size() <= diskMaxEntryBytes) {
+            putDisk(key, data);
+        } else {
+            skipped(diskSkips, "disk", diskMaxEntryBytes);
+        }
+    }
+
+    private void skipped(Counter counter, String tier, long limit) {
+        counter.increment();
+        log.info("Workbook not cached in the {} tier: over its entry limit of {} bytes", tier, limit);
+    }
+
+    /**
+     * Wrap target so that everything written to it is also captured; call
+     * {@link Capture#commit()} once the workbook is complete to cache it.
+     * A null key passes the output through without caching it.
+     */
+    public Capture capture(String key, OutputStream target) {
+        return new Capture(key, target);
+    }
+
+    private synchronized void putMemory(String key, Entry data) {
+        Entry previous = memory.put(key, data);
+        memoryBytes += data.size() - (previous == null ? 0 : previous.size());
+        Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> e = eldest.next();
+            memoryBytes -= e.getValue().size();
+            eldest.remove();
+            memoryEvictions.increment();
+        }
+    }
+
+    /**
+     * Write data to a temp file of this writer's own and publish it under key
+     * unless a concurrent writer of the same key got there first; only the
+     * writer that published counts the bytes
+     */
+    private void putDisk(String key, Entry data) {
+        Path file = diskDir.resolve(key + SUFFIX);
+        if (Files.exists(file)) {
+            return;
+        }
+        Path tmp = null;
+        boolean published;
+        try {
+            tmp = Files.createTempFile(diskDir, key, TMP_SUFFIX);
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                data.writeTo(out);
+            }
+            published = publish(tmp, file);
+        } catch (IOException e) {
+            log.warn("Result cache write to {} failed: {}", file, e.toString());
+            published = false;
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Best effort
+                }
+            }
+        }
+        if (!published) {
+            return;
+        }
+        boolean overBudget;
+        synchronized (this) {
+            diskBytes += data.size();
+            overBudget = diskBytes > diskMaxBytes;
+        }
+        if (overBudget) {
+            evictDisk();
+        }
+    }
+
+    /**
+     * Make tmp visible as file, atomically and only if file does not exist yet:
+     * a hard link fails on an existing target, where a rename would replace it
+     */
+    private static boolean publish(Path tmp, Path file) throws IOException {
+        try {
+            Files.createLink(file, tmp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (UnsupportedOperationException e) {
+            // No hard links on this file system; the rename may replace an identical file
+            boolean existed = Files.exists(file);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            return !existed;
+        }
+    }
+
+    /**
+     * Delete least recently used files until the directory is back within
+     * budget. Listing and deleting run outside the cache monitor, so lookups
+     * are not held up; a second eviction while one runs is skipped.
+     */
+    private void evictDisk() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> s = Files.list(diskDir)) {
+                s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+            } catch (IOException e) {
+                log.warn("Result cache eviction in {} failed: {}", diskDir, e.toString());
+                return;
+            }
+            files.sort(Comparator.comparing(ResultCache::lastModified));
+            long total = 0;
+            for (Path p : files) {
+                total += sizeOf(p);
+            }
+            long freed = 0;
+            for (Path p : files) {
+                if (total - freed <= diskMaxBytes) break;
+                long size = sizeOf(p);
+                try {
+                    if (Files.deleteIfExists(p)) {
+                        freed += size;
+                        diskEvictions.increment();
+                    }
+                } catch (IOException e) {
+                    log.warn("Result cache could not evict {}: {}", p, e.toString());
+                }
+            }
+            synchronized (this) {
+                // Files published meanwhile were added to diskBytes by their writers
+                diskBytes -= freed;
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Bytes held by the directory, deleting temp files left by writers that
+     * did not finish (a crash or a kill)
+     */
+    private long scanDisk() throws IOException {
+        long total = 0;
+        try (Stream<Path> s = Files.list(diskDir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    total += sizeOf(p);
+                } else if (name.endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        return total;
+    }
+
+    private synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private synchronized long diskBytes() {
+        return diskBytes;
+    }
+
+    private static FileTime lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void field(MessageDigest md, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        // Length prefix so ("ab","c") and ("a","bc") hash differently
+        md.update((byte) (b.length >>> 24));
+        md.update((byte) (b.length >>> 16));
+        md.update((byte) (b.length >>> 8));
+        md.update((byte) b.length);
+        md.update(b);
+    }
+
+    private static Counter hitCounter(MeterRegistry registry, String tier) {
+        return Counter.builder("result.cache.hits")
+                .tag("tier", tier)
+                .description("Generations answered from the result cache")
+                .register(registry);
+    }
+
+    private static Counter skipCounter(MeterRegistry registry, String tier) {
+        return Counter.builder("result.cache.skipped")
+                .tag("tier", tier)
+                .description("Workbooks not cached in a tier because they exceed its entry limit")
+                .register(registry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry registry, String tier) {
+        return Counter.builder("result.cache.evictions")
+                .tag("tier", tier)
+                .description("Workbooks evicted from the result cache")
+                .register(registry);
+    }
+
+    /**
+     * A cached workbook, held in the chunks it was captured in
+     */
+    public static final class Entry {
+
+        private final List<byte[]> chunks;
+        private final int size;
+
+        private Entry(List<byte[]> chunks) {
+            this.chunks = chunks;
+            int total = 0;
+            for (byte[] chunk : chunks) {
+                total += chunk.length;
+            }
+            this.size = total;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Tee that forwards to the real output and keeps a copy for the cache in
+     * fixed-size chunks, giving up on the copy once it outgrows the entry
+     * limit of every tier
+     */
+    public final class Capture extends FilterOutputStream {
+
+        private final String key;
+        private final long limit;
+        private List<byte[]> chunks;
+        private byte[] current;
+        private int pos;
+        private long size;
+
+        private Capture(String key, OutputStream target) {
+            super(target);
+            this.key = key;
+            this.limit = Math.max(memoryMaxEntryBytes, diskDir == null ? 0 : diskMaxEntryBytes);
+            this.chunks = (enabled && key != null) ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (chunks != null && reserve(1)) {
+                nextChunkIfFull();
+                current[pos++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (chunks == null || !reserve(len)) {
+                return;
+            }
+            while (len > 0) {
+                nextChunkIfFull();
+                int n = Math.min(len, current.length - pos);
+                System.arraycopy(b, off, current, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * The workbook was written completely; cache it
+         */
+        public void commit() {
+            if (chunks != null) {
+                if (current != null && pos < current.length) {
+                    chunks.set(chunks.size() - 1, Arrays.copyOf(current, pos));
+                }
+                put(key, new Entry(chunks));
+                chunks = null;
+            }
+        }
+
+        /**
+         * Account for len more bytes; false, and the copy dropped, once over the limit
+         */
+        private boolean reserve(int len) {
+            size += len;
+            if (size > limit) {
+                chunks = null;
+                current = null;
+                skipped(memorySkips, "memory", memoryMaxEntryBytes);
+                if (diskDir != null) {
+                    skipped(diskSkips, "disk", diskMaxEntryBytes);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private void nextChunkIfFull() {
+            if (current == null || pos == current.length) {
+                current = new byte[CHUNK];
+                chunks.add(current);
+                pos = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Submission counts by status, in total and per hour of upload, kept in
+ * memory so reading them never touches form_submissions. This instance's
+ * writes update the counters as they happen; a periodic reconcile replaces
+ * the recent hours with counts from the database (picking up other
+ * instances and late commits), and a less frequent full reconcile corrects
+ * everything else, such as another instance's retention deletes.
+ */
+@Component
+public class StatusCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusCounters.class);
+
+    private final FormSubmissionRepository submissions;
+    private final Duration window;
+    private final long fullIntervalNanos;
+
+    private final ConcurrentSkipListMap<LocalDateTime, ConcurrentMap<String, LongAdder>> hours = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongAdder> totals = new ConcurrentHashMap<>();
+
+    private final Timer reconcileTimer;
+
+    private volatile Instant reconciledAt;
+    private volatile long lastFullNanos;
+
+    public StatusCounters(FormSubmissionRepository submissions,
+                          MeterRegistry registry,
+                          @Value("${stats.reconcile-window:2h}") Duration window,
+                          @Value("${stats.full-reconcile-interval:6h}") Duration fullInterval) {
+        this.submissions = submissions;
+        this.window = window;
+        this.fullIntervalNanos = fullInterval.toNanos();
+        this.reconcileTimer = Timer.builder("stats.reconcile")
+                .description("Time to reconcile the status counters with the database")
+                .register(registry);
+    }
+
+    /**
+     * A submission uploaded at uploadedAt was stored with status
+     */
+    public void added(LocalDateTime uploadedAt, String status) {
+        adjust(uploadedAt, status, 1);
+    }
+
+    /**
+     * A stored submission moved from one status to another
+     */
+    public void transitioned(LocalDateTime uploadedAt, String from, String to) {
+        if (!Objects.equals(from, to)) {
+            adjust(uploadedAt, from, -1);
+            adjust(uploadedAt, to, 1);
+        }
+    }
+
+    /**
+     * Submissions before cutoff were deleted: drop their hours and recount the
+     * hour the cutoff falls in
+     */
+    public void purgedBefore(LocalDateTime cutoff) {
+        LocalDateTime hour = cutoff.truncatedTo(ChronoUnit.HOURS);
+        for (LocalDateTime old : List.copyOf(hours.headMap(hour).keySet())) {
+            ConcurrentMap<String, LongAdder> counts = hours.remove(old);
+            if (counts != null) {
+                counts.forEach((status, n) -> total(status).add(-n.sum()));
+            }
+        }
+        replace(hour, hour.plusHours(1));
+    }
+
+    /**
+     * Totals by status
+     */
+    public Map<String, Long> totals() {
+        return snapshot(totals);
+    }
+
+    /**
+     * Counts by status for each of the last n hours that has any, oldest first
+     */
+    public Map<LocalDateTime, Map<String, Long>> lastHours(int n) {
+        LocalDateTime from = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(n - 1L);
+        Map<LocalDateTime, Map<String, Long>> result = new TreeMap<>();
+        hours.tailMap(from).forEach((hour, counts) -> {
+            Map<String, Long> values = snapshot(counts);
+            if (!values.isEmpty()) {
+                result.put(hour, values);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * When the counters were last checked against the database, null before the first time
+     */
+    public Instant getReconciledAt() {
+        return reconciledAt;
+    }
+
+    @Scheduled(initialDelayString = "${stats.reconcile-initial-delay:10s}",
+               fixedDelayString = "${stats.reconcile-interval:60s}")
+    public void reconcile() {
+        long t0 = System.nanoTime();
+        boolean full = reconciledAt == null || t0 - lastFullNanos >= fullIntervalNanos;
+        try {
+            if (full) {
+                replace(null, null);
+                lastFullNanos = t0;
+            } else {
+                LocalDateTime from = LocalDateTime.now().minus(window).truncatedTo(ChronoUnit.HOURS);
+                replace(from, null);
+            }
+            reconciledAt = Instant.now();
+        } catch (RuntimeException e) {
+            log.warn("Status counters not reconciled: {}", e.toString());
+        }
+        reconcileTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        if (full) {
+            log.info("Status counters reconciled in {} ms: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0), totals());
+        }
+    }
+
+    /**
+     * Set the hours in [from, to) (null = unbounded) to the database counts,
+     * moving the totals by the same differences
+     */
+    private void replace(LocalDateTime from, LocalDateTime to) {
+        Map<LocalDateTime, Map<String, Long>> actual = new HashMap<>();
+        for (Object[] row : submissions.countByStatusAndHour(
+                from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0),
+                to != null ? to : LocalDateTime.of(9999, 1, 1, 0, 0))) {
+            if (row[0] == null) {
+                continue;
+            }
+            actual.computeIfAbsent(toLocalDateTime(row[1]), h -> new HashMap<>())
+                    .put((String) row[0], ((Number) row[2]).longValue());
+        }
+
+        Map<LocalDateTime, ConcurrentMap<String, LongAdder>> range =
+                (from == null && to == null) ? hours
+                : (to == null) ? hours.tailMap(from)
+                : hours.subMap(from, to);
+        for (Map.Entry<LocalDateTime, ConcurrentMap<String, LongAdder>> e : range.entrySet()) {
+            Map<String, Long> db = actual.getOrDefault(e.getKey(), Map.of());
+            e.getValue().forEach((status, n) -> {
+                if (!db.containsKey(status)) {
+                    adjust(e.getKey(), status, -n.sum());
+                }
+            });
+        }
+        actual.forEach((hour, counts) -> counts.forEach((status, n) -> {
+            long current = current(hour, status);
+            if (n != current) {
+                adjust(hour, status, n - current);
+            }
+        }));
+    }
+
+    private void adjust(LocalDateTime uploadedAt, String status, long delta) {
+        if (status == null) {
+            return;
+        }
+        hours.computeIfAbsent(uploadedAt.truncatedTo(ChronoUnit.HOURS), h -> new ConcurrentHashMap<>())
+                .computeIfAbsent(status, s -> new LongAdder())
+                .add(delta);
+        total(status).add(delta);
+    }
+
+    private long current(LocalDateTime hour, String status) {
+        Map<String, LongAdder> counts = hours.get(hour);
+        LongAdder n = (counts != null) ? counts.get(status) : null;
+        return (n != null) ? n.sum() : 0;
+    }
+
+    private LongAdder total(String status) {
+        return totals.computeIfAbsent(status, s -> new LongAdder());
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counts) {
+        Map<String, Long> values = new TreeMap<>();
+        counts.forEach((status, n) -> {
+            long v = n.sum();
+            if (v != 0) {
+                values.put(status, v);
+            }
+        });
+        return values;
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp ts) {
+            return ts.toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime ldt) {
+            return ldt;
+        }
+        throw new IllegalStateException("Unexpected hour value " + value);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import com.example.demo.entity.FormSubmission;
+import com.example.demo.entity.SubmissionSummary;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Submission history, newest first, paged by keyset on (uploaded_at, id):
+ * each page continues from an opaque cursor naming the last row seen, so a
+ * page costs the same index range scan however deep it is and rows added
+ * meanwhile do not shift later pages. Filters combine; text filters match
+ * a case-insensitive substring.
+ */
+@Service
+public class SubmissionHistoryService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "uploadedAt", "id");
+
+    private final FormSubmissionRepository submissions;
+
+    public SubmissionHistoryService(FormSubmissionRepository submissions) {
+        this.submissions = submissions;
+    }
+
+    /**
+     * The ten latest submissions, for the dashboard
+     */
+    public List<SubmissionSummary> recent() {
+        return submissions.findTop10ByOrderByUploadedAtDescIdDesc();
+    }
+
+    /**
+     * Search criteria; null fields do not filter
+     */
+    public record Filter(String relayLocation, String lineNumber, String status,
+                         LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * One page of submissions after cursor (null for the first page)
+     *
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public Window<SubmissionSummary> search(Filter filter, String cursor, int limit) {
+        KeysetScrollPosition position = (cursor == null || cursor.isBlank()) ? ScrollPosition.keyset() : decode(cursor);
+        LocalDateTime after = (LocalDateTime) position.getKeys().get("uploadedAt");
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return submissions.findBy(specification(filter, after),
+                q -> q.as(SubmissionSummary.class).sortBy(NEWEST_FIRST).limit(size).scroll(position));
+    }
+
+    /**
+     * Cursor continuing after the last row of window, or null when it is the last page
+     */
+    public String nextCursor(Window<SubmissionSummary> window) {
+        if (!window.hasNext() || window.isEmpty()) {
+            return null;
+        }
+        SubmissionSummary last = window.getContent().get(window.size() - 1);
+        String key = last.uploadedAt() + "|" + last.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeysetScrollPosition decode(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = key.indexOf('|');
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("uploadedAt", LocalDateTime.parse(key.substring(0, sep)));
+            keys.put("id", Long.parseLong(key.substring(sep + 1)));
+            return ScrollPosition.forward(keys);
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor '" + cursor + "'", e);
+        }
+    }
+
+    /**
+     * Filter predicates. after repeats the cursor's timestamp as a plain
+     * upper bound: the keyset condition Spring Data adds is an OR that the
+     * database applies as a filter, so without it a deep page would walk the
+     * index from the newest row.
+     */
+    private static Specification<FormSubmission> specification(Filter filter, LocalDateTime after) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (after != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("uploadedAt"), after));
+            }
+            if (filter.relayLocation() != null) {
+                predicates.add(cb.like(cb.upper(root.get("relayLocation")), containing(filter.relayLocation()), '\\'));
+            }
+            if (filter.lineNumber() != null) {
+                predicates.add(cb.like(cb.upper(root.get("lineNumber")), containing(filter.lineNumber()), '\\'));
+            }
+            if (filter.status() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.status()));
+            }
+            if (filter.from() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("uploadedAt"), filter.from()));
+            }
+            if (filter.to() != null) {
+                predicates.add(cb.lessThan(root.get("uploadedAt"), filter.to()));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * LIKE pattern for a literal substring, upper-cased to match upper(column)
+     */
+    private static String containing(String text) {
+        String escaped = text.toUpperCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import com.example.demo.entity.FormSubmission;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records synchronous generations (/upload, /upload/batch) as submissions
+ * without a database round trip on the request: records queue in memory
+ * and a background flush writes them with saveAll, one transaction and
+ * JDBC-batched inserts per chunk. A chunk that fails is split in halves and
+ * retried, so only the records that cannot be written are dropped. When
+ * the queue is full a record is dropped and counted rather than slowing
+ * the upload. A successful
+ * generation is stored with its workbook delta (see {@link WorkbookArchive}).
+ */
+@Component
+public class SubmissionRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionRecorder.class);
+
+    private final FormSubmissionRepository submissions;
+    private final StatusCounters counters;
+    private final WorkbookArchive archive;
+    private final boolean enabled;
+    private final int flushChunk;
+    private final BlockingQueue<FormSubmission> pending;
+
+    private final Counter recorded;
+    private final Counter dropped;
+    private final Timer flushTimer;
+
+    public SubmissionRecorder(FormSubmissionRepository submissions,
+                              StatusCounters counters,
+                              WorkbookArchive archive,
+                              MeterRegistry registry,
+                              @Value("${submissions.record.enabled:true}") boolean enabled,
+                              @Value("${submissions.record.queue-capacity:10000}") int queueCapacity,
+                              @Value("${submissions.record.flush-chunk:500}") int flushChunk) {
+        this.submissions = submissions;
+        this.counters = counters;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.flushChunk = flushChunk;
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.recorded = Counter.builder("submissions.recorded")
+                .description("Generation records written to form_submissions")
+                .register(registry);
+        this.dropped = Counter.builder("submissions.record.dropped")
+                .description("Generation records dropped because the write queue was full")
+                .register(registry);
+        this.flushTimer = Timer.builder("submissions.record.flush")
+                .description("Time to write one chunk of queued records")
+                .register(registry);
+        Gauge.builder("submissions.record.pending", pending, BlockingQueue::size)
+                .description("Generation records waiting to be written")
+                .register(registry);
+    }
+
+    /**
+     * Queue a finished generation; sheet is the generated workbook and error
+     * null on success, sheet null on failure
+     */
+    public void record(String formDataJson, Map<String, String> formData, String csvFileName,
+                       CalculationSheetGenerator.PreparedSheet sheet, String error) {
+        if (!enabled) {
+            return;
+        }
+        FormSubmission submission = new FormSubmission(formDataJson, formData, csvFileName);
+        submission.setStatus(error == null ? JobService.SUCCESS : JobService.FAILED);
+        submission.setErrorMessage(error);
+        archive.attach(submission, sheet);
+        if (!pending.offer(submission)) {
+            dropped.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${submissions.record.flush-interval:1s}")
+    public void flush() {
+        List<FormSubmission> chunk = new ArrayList<>(flushChunk);
+        while (pending.drainTo(chunk, flushChunk) > 0) {
+            long t0 = System.nanoTime();
+            save(chunk);
+            flushTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Write records in one transaction; on failure bisect until the failing
+     * records are isolated, and drop those
+     */
+    private void save(List<FormSubmission> records) {
+        try {
+            submissions.saveAll(records);
+            recorded.increment(records.size());
+            records.forEach(r -> counters.added(r.getUploadedAt(), r.getStatus()));
+        } catch (RuntimeException e) {
+            if (records.size() == 1) {
+                dropped.increment();
+                log.warn("Dropped generation record of {} ({}): {}", records.get(0).getCsvFileName(),
+                        records.get(0).getRelayLocation(), e.toString());
+                return;
+            }
+            // The rolled back inserts kept their sequence ids; new ones are drawn on retry
+            records.forEach(r -> r.setId(null));
+            int half = records.size() / 2;
+            save(records.subList(0, half));
+            save(records.subList(half, records.size()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
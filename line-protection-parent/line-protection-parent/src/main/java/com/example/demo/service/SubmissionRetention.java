@@ -0,0 +1,106 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purges submissions older than the maximum age in bounded chunks: each
+ * chunk is one DELETE of at most chunk-size rows in its own transaction,
+ * with a pause between chunks, so no statement holds row locks or WAL for
+ * long and concurrent inserts keep flowing. Off unless enabled.
+ */
+@Component
+public class SubmissionRetention {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionRetention.class);
+
+    private final FormSubmissionRepository submissions;
+    private final StatusCounters counters;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    private final Counter purged;
+    private final Timer chunkTimer;
+    private final Timer runTimer;
+
+    public SubmissionRetention(FormSubmissionRepository submissions,
+                               StatusCounters counters,
+                               MeterRegistry registry,
+                               @Value("${submissions.retention.enabled:false}") boolean enabled,
+                               @Value("${submissions.retention.max-age:365d}") Duration maxAge,
+                               @Value("${submissions.retention.chunk-size:5000}") int chunkSize,
+                               @Value("${submissions.retention.pause:200ms}") Duration pause) {
+        this.submissions = submissions;
+        this.counters = counters;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pause.toMillis();
+
+        this.purged = Counter.builder("submissions.retention.purged")
+                .description("Submissions deleted by the retention job")
+                .register(registry);
+        this.chunkTimer = Timer.builder("submissions.retention.chunk")
+                .description("Duration of one chunk delete, statement and commit: how long its row locks were held")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.runTimer = Timer.builder("submissions.retention.run")
+                .description("Duration of a whole retention pass")
+                .register(registry);
+    }
+
+    @Scheduled(cron = "${submissions.retention.cron:0 30 3 * * *}")
+    public void scheduled() {
+        if (enabled) {
+            purge();
+        }
+    }
+
+    /**
+     * Delete everything older than the maximum age; returns the rows deleted
+     */
+    public long purge() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(maxAge);
+        long t0 = System.nanoTime();
+        long total = 0;
+        int chunks = 0;
+        int deleted;
+        do {
+            long c0 = System.nanoTime();
+            deleted = submissions.deleteChunkUploadedBefore(cutoff, chunkSize);
+            chunkTimer.record(System.nanoTime() - c0, TimeUnit.NANOSECONDS);
+            purged.increment(deleted);
+            total += deleted;
+            chunks++;
+            if (deleted == chunkSize && pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (deleted == chunkSize);
+        if (total > 0) {
+            counters.purgedBefore(cutoff);
+        }
+        long elapsed = System.nanoTime() - t0;
+        runTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Retention: deleted {} submissions uploaded before {} in {} chunks, {} ms",
+                total, cutoff, chunks, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return total;
+    }
+}
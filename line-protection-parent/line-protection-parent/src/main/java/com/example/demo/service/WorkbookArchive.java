@@ -0,0 +1,245 @@
+package com.example.demo.service;
+
+import com.example.demo.FormSubmissionRepository;
+import com.example.demo.WorkbookTemplateRepository;
+import com.example.demo.entity.FormSubmission;
+import com.example.demo.entity.StoredWorkbook;
+import com.example.demo.entity.WorkbookTemplate;
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.TemplateCache;
+import com.example.demo.template.WorkbookPatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated workbooks kept for audit as deltas: a submission stores the
+ * SHA-256 of its template and its cell writes (a few KB, against 1+ MB for
+ * the file), and the workbook is rebuilt on demand by replaying the writes
+ * onto the same template. Every template version a delta is recorded
+ * against is kept in workbook_templates, so deltas survive a template
+ * change. Output has fixed ZIP entry times, so the rebuilt file is byte for
+ * byte the one first served, as long as the renderer settings
+ * (generation.mode, formulas.enabled) are unchanged. Recently rebuilt files
+ * are held in an LRU bounded by total bytes.
+ */
+@Component
+public class WorkbookArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkbookArchive.class);
+
+    // Previous template versions kept open for rebuilds
+    private static final int PREVIOUS_TEMPLATES = 2;
+
+    private final FormSubmissionRepository submissions;
+    private final WorkbookTemplateRepository templates;
+    private final CalculationSheetGenerator generator;
+    private final TemplateCache templateCache;
+    private final boolean enabled;
+    private final long cacheMaxBytes;
+
+    // Access-ordered, guarded by this
+    private final LinkedHashMap<Long, byte[]> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private long recentBytes;
+
+    // Template versions known to be in workbook_templates
+    private final Set<String> storedTemplates = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this
+    private final LinkedHashMap<String, CachedTemplate> previousTemplates = new LinkedHashMap<>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedTemplate> eldest) {
+            return size() > PREVIOUS_TEMPLATES;
+        }
+    };
+
+    private final DistributionSummary deltaSize;
+    private final Counter hits;
+    private final Timer regenerateTimer;
+
+    public WorkbookArchive(FormSubmissionRepository submissions,
+                           WorkbookTemplateRepository templates,
+                           CalculationSheetGenerator generator,
+                           TemplateCache templateCache,
+                           MeterRegistry registry,
+                           @Value("${submissions.workbook-delta.enabled:true}") boolean enabled,
+                           @Value("${submissions.workbook-delta.cache-max-size:32MB}") DataSize cacheMaxSize) {
+        this.submissions = submissions;
+        this.templates = templates;
+        this.generator = generator;
+        this.templateCache = templateCache;
+        this.enabled = enabled;
+        this.cacheMaxBytes = cacheMaxSize.toBytes();
+
+        this.deltaSize = DistributionSummary.builder("submissions.workbook.delta.size")
+                .description("Stored size of a generated workbook's delta")
+                .baseUnit("bytes")
+                .register(registry);
+        this.hits = Counter.builder("submissions.workbook.regenerate.hits")
+                .description("Workbook downloads served from the recently regenerated files")
+                .register(registry);
+        this.regenerateTimer = Timer.builder("submissions.workbook.regenerate")
+                .description("Time to rebuild a workbook from its stored delta")
+                .register(registry);
+    }
+
+    /**
+     * Store sheet's cell writes and template version on submission, and the
+     * template itself the first time it is seen, so nothing touches the
+     * database at startup. Failures are logged, as the workbook has been
+     * generated either way.
+     */
+    public void attach(FormSubmission submission, CalculationSheetGenerator.PreparedSheet sheet) {
+        if (!enabled || sheet == null) {
+            return;
+        }
+        try {
+            WorkbookPatch patch = sheet.getPatch();
+            if (patch == null) {
+                return;
+            }
+            byte[] delta = patch.toDelta();
+            keep(patch.getTemplate());
+            submission.setTemplateVersion(patch.getTemplate().getVersion());
+            submission.setWorkbookDelta(delta);
+            deltaSize.record(delta.length);
+        } catch (Exception e) {
+            log.warn("Workbook delta not stored: {}", e.toString());
+        }
+    }
+
+    /**
+     * The workbook of submission id, rebuilt from its delta; empty when there
+     * is no such submission or it has no stored workbook
+     *
+     * @throws StaleTemplateException when the template the delta was recorded against was not kept
+     */
+    public Optional<byte[]> workbook(long id) throws Exception {
+        synchronized (this) {
+            byte[] hit = recent.get(id);
+            if (hit != null) {
+                hits.increment();
+                return Optional.of(hit);
+            }
+        }
+
+        Optional<StoredWorkbook> stored = submissions.findWorkbookById(id);
+        if (stored.isEmpty() || stored.get().workbookDelta() == null) {
+            return Optional.empty();
+        }
+        String version = stored.get().templateVersion();
+        CachedTemplate template = template(version)
+                .orElseThrow(() -> new StaleTemplateException(id, version));
+
+        long t0 = System.nanoTime();
+        WorkbookPatch patch = WorkbookPatch.fromDelta(template, stored.get().workbookDelta());
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+        generator.replay(patch).writeTo(out);
+        byte[] workbook = out.toByteArray();
+        regenerateTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        log.info("Workbook of submission {} rebuilt from {} cell writes ({} bytes)", id, patch.size(), workbook.length);
+
+        remember(id, workbook);
+        return Optional.of(workbook);
+    }
+
+    /**
+     * Template of the given version: the current one, or a kept one restored
+     * from workbook_templates
+     */
+    private Optional<CachedTemplate> template(String version) throws Exception {
+        CachedTemplate current = templateCache.get();
+        if (current.getVersion().equals(version)) {
+            return Optional.of(current);
+        }
+        synchronized (this) {
+            CachedTemplate previous = previousTemplates.get(version);
+            if (previous != null) {
+                return Optional.of(previous);
+            }
+        }
+        Optional<WorkbookTemplate> kept = version == null ? Optional.empty() : templates.findById(version);
+        if (kept.isEmpty()) {
+            return Optional.empty();
+        }
+        CachedTemplate restored = templateCache.restore(kept.get().getContent(), kept.get().getLocation());
+        if (!restored.getVersion().equals(version)) {
+            throw new IllegalStateException("Stored template " + abbreviate(version) + " does not match its version");
+        }
+        log.info("Template {} (stored {}) restored to rebuild workbooks generated from it",
+                abbreviate(version), kept.get().getStoredAt());
+        synchronized (this) {
+            previousTemplates.put(version, restored);
+        }
+        return Optional.of(restored);
+    }
+
+    /**
+     * Store template in workbook_templates unless it is there already
+     */
+    private void keep(CachedTemplate template) throws Exception {
+        String version = template.getVersion();
+        if (storedTemplates.contains(version)) {
+            return;
+        }
+        if (!templates.existsById(version)) {
+            byte[] content;
+            try (InputStream in = template.openStream()) {
+                content = in.readAllBytes();
+            }
+            try {
+                templates.save(new WorkbookTemplate(version, content, template.getLocation()));
+                log.info("Template {} stored for rebuilding workbooks ({} bytes)", abbreviate(version), content.length);
+            } catch (DataIntegrityViolationException e) {
+                // Stored by another instance meanwhile
+            }
+        }
+        storedTemplates.add(version);
+    }
+
+    private static String abbreviate(String version) {
+        return version == null ? "unknown" : version.substring(0, Math.min(12, version.length()));
+    }
+
+    private synchronized void remember(long id, byte[] workbook) {
+        if (workbook.length > cacheMaxBytes) {
+            return;
+        }
+        byte[] previous = recent.put(id, workbook);
+        recentBytes += workbook.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<Long, byte[]>> eldest = recent.entrySet().iterator();
+        while (recentBytes > cacheMaxBytes && eldest.hasNext()) {
+            recentBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A stored delta recorded against a template that is neither the current
+     * one nor kept, e.g. one replaced before workbook_templates existed
+     */
+    public static final class StaleTemplateException extends IllegalStateException {
+
+        StaleTemplateException(long id, String version) {
+            super("Submission " + id + " was generated from template " + abbreviate(version)
+                    + ", which is no longer available");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.template;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the calculation sheet template after VML sanitization.
+ * Shared read-only by every request; each request opens its own copy.
+ */
+public final class CachedTemplate {
+
+    private final byte[] bytes;
+    private final String version;
+    private final String location;
+    private final Instant loadedAt;
+    private final String workbookPartName;
+    private final List<TemplateSheet> sheets;
+    private final Map<String, TemplateSheet> sheetsByName = new HashMap<>();
+
+    CachedTemplate(byte[] bytes, String version, String location, Instant loadedAt,
+                   String workbookPartName, List<TemplateSheet> sheets) {
+        this.bytes = bytes;
+        this.version = version;
+        this.location = location;
+        this.loadedAt = loadedAt;
+        this.workbookPartName = workbookPartName;
+        this.sheets = List.copyOf(sheets);
+        for (TemplateSheet sheet : sheets) {
+            sheetsByName.put(sheet.getName(), sheet);
+        }
+    }
+
+    /**
+     * Fresh stream over the sanitized package bytes
+     */
+    public InputStream openStream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * SHA-256 of the sanitized package, hex encoded
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * ZIP entry name of the workbook part, e.g. "xl/workbook.xml"
+     */
+    public String getWorkbookPartName() {
+        return workbookPartName;
+    }
+
+    /**
+     * Sheet by tab name, or null when the template has no such sheet
+     */
+    public TemplateSheet getSheet(String name) {
+        return sheetsByName.get(name);
+    }
+
+    public TemplateSheet getSheetAt(int index) {
+        return sheets.get(index);
+    }
+
+    public int getNumberOfSheets() {
+        return sheets.size();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo.template;
+
+/**
+ * How a generated workbook is rendered from its {@link WorkbookPatch}
+ */
+public enum GenerationMode {
+    /** Open the template in POI, apply the writes and re-serialize the whole workbook */
+    POI,
+    /** Copy untouched template parts verbatim and stream-patch only the written sheets */
+    STREAMING
+}
@@ -0,0 +1,137 @@
+package com.example.demo.template;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Row-bucketed lookup of the merged regions of one sheet. Each row keeps the
+ * regions crossing it sorted by first column; merged regions never overlap, so
+ * a binary search on that row resolves (row, col) in O(log n) without
+ * allocating. Built once per template and shared read-only across requests.
+ */
+public final class MergedRegionIndex {
+
+    // Regions taller than this are kept out of the row buckets and scanned instead
+    private static final int MAX_BUCKETED_HEIGHT = 4096;
+
+    private static final int[] NONE = new int[0];
+
+    private final int[] firstRows;
+    private final int[] lastRows;
+    private final int[] firstCols;
+    private final int[] lastCols;
+
+    // rowBuckets[r] = ids of regions crossing row r, sorted by first column
+    private final int[][] rowBuckets;
+    private final int[] tall;
+
+    public MergedRegionIndex(List<CellRangeAddress> regions) {
+        int n = regions.size();
+        firstRows = new int[n];
+        lastRows = new int[n];
+        firstCols = new int[n];
+        lastCols = new int[n];
+
+        int maxRow = -1;
+        List<Integer> tallIds = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            CellRangeAddress rng = regions.get(i);
+            firstRows[i] = rng.getFirstRow();
+            lastRows[i] = rng.getLastRow();
+            firstCols[i] = rng.getFirstColumn();
+            lastCols[i] = rng.getLastColumn();
+            if (lastRows[i] - firstRows[i] >= MAX_BUCKETED_HEIGHT) {
+                tallIds.add(i);
+            } else {
+                maxRow = Math.max(maxRow, lastRows[i]);
+            }
+        }
+        tall = tallIds.stream().mapToInt(Integer::intValue).toArray();
+
+        int[] counts = new int[maxRow + 1];
+        for (int i = 0; i < n; i++) {
+            if (isTall(i)) continue;
+            for (int r = firstRows[i]; r <= lastRows[i]; r++) {
+                counts[r]++;
+            }
+        }
+        rowBuckets = new int[maxRow + 1][];
+        for (int r = 0; r <= maxRow; r++) {
+            rowBuckets[r] = counts[r] == 0 ? NONE : new int[counts[r]];
+        }
+        int[] fill = new int[maxRow + 1];
+        for (int i = 0; i < n; i++) {
+            if (isTall(i)) continue;
+            for (int r = firstRows[i]; r <= lastRows[i]; r++) {
+                rowBuckets[r][fill[r]++] = i;
+            }
+        }
+        for (int[] bucket : rowBuckets) {
+            if (bucket.length > 1) {
+                sortByFirstCol(bucket);
+            }
+        }
+    }
+
+    /**
+     * Id of the merged region containing (row, col), or -1 when the cell is not merged
+     */
+    public int find(int row, int col) {
+        if (row >= 0 && row < rowBuckets.length) {
+            int[] bucket = rowBuckets[row];
+            int lo = 0;
+            int hi = bucket.length - 1;
+            // Last region whose first column is <= col
+            int hit = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (firstCols[bucket[mid]] <= col) {
+                    hit = bucket[mid];
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (hit >= 0 && col <= lastCols[hit]) {
+                return hit;
+            }
+        }
+        for (int id : tall) {
+            if (row >= firstRows[id] && row <= lastRows[id] && col >= firstCols[id] && col <= lastCols[id]) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public int firstRow(int id) {
+        return firstRows[id];
+    }
+
+    public int firstColumn(int id) {
+        return firstCols[id];
+    }
+
+    public int size() {
+        return firstRows.length;
+    }
+
+    private boolean isTall(int id) {
+        return lastRows[id] - firstRows[id] >= MAX_BUCKETED_HEIGHT;
+    }
+
+    private void sortByFirstCol(int[] bucket) {
+        // Buckets are small; pack (firstCol, id) to sort primitives
+        long[] keys = new long[bucket.length];
+        for (int k = 0; k < bucket.length; k++) {
+            keys[k] = ((long) firstCols[bucket[k]] << 32) | bucket[k];
+        }
+        Arrays.sort(keys);
+        for (int k = 0; k < bucket.length; k++) {
+            bucket[k] = (int) keys[k];
+        }
+    }
+}
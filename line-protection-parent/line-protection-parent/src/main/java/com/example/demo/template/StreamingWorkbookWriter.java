@@ -0,0 +1,398 @@
+package com.example.demo.template;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.poi.ss.util.CellReference;
+import org.springframework.stereotype.Component;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a workbook directly at the OPC/ZIP level. Template parts are
+ * copied as raw compressed entries; only the sheets that receive writes are
+ * streamed through a StAX patcher, plus workbook.xml to request a full
+ * recalculation on open. Nothing is loaded into a POI object model.
+ */
+@Component
+public class StreamingWorkbookWriter {
+
+    private static final String SS_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    // CT_Workbook children that must come after calcPr
+    private static final Set<String> AFTER_CALC_PR = Set.of(
+            "oleSize", "customWorkbookViews", "pivotCaches", "smartTagPr", "smartTagTypes",
+            "webPublishing", "fileRecoveryPr", "webPublishObjects", "extLst");
+
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final XMLEventFactory events = XMLEventFactory.newInstance();
+
+    public StreamingWorkbookWriter() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Write the template with the patch applied to out. The stream is left open.
+     */
+    public void write(WorkbookPatch patch, OutputStream out) throws IOException {
+        CachedTemplate template = patch.getTemplate();
+        Map<String, SheetWrites> writesByPart = groupBySheetPart(patch);
+
+        try (ZipFile zip = new ZipFile(new SeekableInMemoryByteChannel(template.bytes()));
+             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(out))) {
+
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                String name = entry.getName();
+                SheetWrites writes = writesByPart.get(name);
+                boolean isWorkbook = name.equals(template.getWorkbookPartName());
+
+                if (writes == null && !isWorkbook) {
+                    // Untouched part: copy the compressed bytes as-is
+                    try (InputStream raw = zip.getRawInputStream(entry)) {
+                        zos.addRawArchiveEntry(entry, raw);
+                    }
+                    continue;
+                }
+
+                ZipArchiveEntry patched = new ZipArchiveEntry(name);
+                patched.setMethod(ZipArchiveEntry.DEFLATED);
+                patched.setTime(ZipTimestamps.FIXED);
+                zos.putArchiveEntry(patched);
+                // The XML writer emits small chunks; buffer them ahead of the deflater
+                BufferedOutputStream buffered = new BufferedOutputStream(CloseShieldOutputStream.wrap(zos), 1 << 16);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    if (isWorkbook) {
+                        patchWorkbook(in, buffered);
+                    } else {
+                        patchSheet(in, buffered, writes);
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException("Failed to patch " + name, e);
+                }
+                buffered.flush();
+                zos.closeArchiveEntry();
+            }
+            zos.finish();
+        }
+    }
+
+    /**
+     * Sorted, de-duplicated writes per sheet part. The last write to a cell wins,
+     * as it would when the writes are applied one by one through POI.
+     */
+    private static Map<String, SheetWrites> groupBySheetPart(WorkbookPatch patch) {
+        CachedTemplate template = patch.getTemplate();
+        Map<Integer, List<Integer>> bySheet = new HashMap<>();
+        for (int i = 0; i < patch.size(); i++) {
+            bySheet.computeIfAbsent(patch.sheetAt(i), k -> new ArrayList<>()).add(i);
+        }
+
+        Map<String, SheetWrites> result = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : bySheet.entrySet()) {
+            List<Integer> idx = e.getValue();
+            // row:20 bits | col:14 bits | write order:29 bits
+            long[] keys = new long[idx.size()];
+            for (int k = 0; k < keys.length; k++) {
+                int i = idx.get(k);
+                keys[k] = ((long) patch.rowAt(i) << 43) | ((long) patch.colAt(i) << 29) | i;
+            }
+            Arrays.sort(keys);
+
+            int[] order = new int[keys.length];
+            int n = 0;
+            for (int k = 0; k < keys.length; k++) {
+                boolean lastForCell = k + 1 == keys.length || (keys[k + 1] >>> 29) != (keys[k] >>> 29);
+                if (lastForCell) {
+                    order[n++] = (int) (keys[k] & ((1L << 29) - 1));
+                }
+            }
+            String part = template.getSheetAt(e.getKey()).getPartName();
+            result.put(part, new SheetWrites(patch, Arrays.copyOf(order, n)));
+        }
+        return result;
+    }
+
+    private void patchSheet(InputStream in, OutputStream out, SheetWrites w) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+
+        boolean inSheetData = false;
+        int currentRow = -1;
+        int lastRow = -1;
+        int lastCol = -1;
+
+        while (reader.hasNext()) {
+            XMLEvent e = reader.nextEvent();
+
+            if (e.isStartElement()) {
+                StartElement se = e.asStartElement();
+                String local = se.getName().getLocalPart();
+
+                if (!inSheetData) {
+                    inSheetData = "sheetData".equals(local);
+                } else if ("row".equals(local)) {
+                    String r = attr(se, "r");
+                    currentRow = (r != null) ? Integer.parseInt(r) - 1 : lastRow + 1;
+                    lastRow = currentRow;
+                    lastCol = -1;
+                    writeRowsBefore(writer, w, currentRow);
+                } else if ("c".equals(local) && currentRow >= 0) {
+                    String r = attr(se, "r");
+                    int col = (r != null) ? new CellReference(r).getCol() : lastCol + 1;
+                    lastCol = col;
+                    writeCellsBefore(writer, w, currentRow, col);
+                    if (w.hasNext() && w.row() == currentRow && w.col() == col) {
+                        replaceCell(reader, writer, se, w);
+                        w.advance();
+                        continue;
+                    }
+                }
+            } else if (e.isEndElement() && inSheetData) {
+                String local = e.asEndElement().getName().getLocalPart();
+                if ("row".equals(local)) {
+                    writeCellsBefore(writer, w, currentRow, Integer.MAX_VALUE);
+                    currentRow = -1;
+                } else if ("sheetData".equals(local)) {
+                    writeRowsBefore(writer, w, Integer.MAX_VALUE);
+                    inSheetData = false;
+                }
+            }
+            writer.add(e);
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    /**
+     * Emit new rows for pending writes whose row is above the given one
+     */
+    private void writeRowsBefore(XMLEventWriter writer, SheetWrites w, int row) throws XMLStreamException {
+        while (w.hasNext() && w.row() < row) {
+            int r = w.row();
+            writer.add(events.createStartElement("", SS_NS, "row",
+                    List.of(events.createAttribute("r", Integer.toString(r + 1))).iterator(), null));
+            writeCellsBefore(writer, w, r, Integer.MAX_VALUE);
+            writer.add(events.createEndElement("", SS_NS, "row"));
+        }
+    }
+
+    /**
+     * Emit new cells for pending writes in this row left of the given column
+     */
+    private void writeCellsBefore(XMLEventWriter writer, SheetWrites w, int row, int col) throws XMLStreamException {
+        while (w.hasNext() && w.row() == row && w.col() < col) {
+            List<Attribute> attrs = new ArrayList<>(2);
+            attrs.add(events.createAttribute("r", new CellReference(row, w.col()).formatAsString()));
+            writeCell(writer, attrs, null, w);
+            w.advance();
+        }
+    }
+
+    /**
+     * Replace an existing cell, keeping its style and any formula. Consumes the
+     * reader up to and including the cell's end tag.
+     */
+    private void replaceCell(XMLEventReader reader, XMLEventWriter writer, StartElement start, SheetWrites w)
+            throws XMLStreamException {
+        List<Attribute> attrs = new ArrayList<>();
+        for (Iterator<Attribute> it = start.getAttributes(); it.hasNext(); ) {
+            Attribute a = it.next();
+            String name = a.getName().getLocalPart();
+            // t is rewritten below, vm/cm point at value metadata of the old value
+            if (!"t".equals(name) && !"vm".equals(name) && !"cm".equals(name)) {
+                attrs.add(a);
+            }
+        }
+
+        List<XMLEvent> formula = null;
+        boolean inFormula = false;
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent e = reader.nextEvent();
+            if (e.isStartElement()) {
+                depth++;
+                if (depth == 2 && "f".equals(e.asStartElement().getName().getLocalPart())) {
+                    formula = new ArrayList<>();
+                    inFormula = true;
+                }
+            }
+            if (inFormula) {
+                formula.add(e);
+            }
+            if (e.isEndElement()) {
+                if (depth == 2) {
+                    inFormula = false;
+                }
+                depth--;
+            }
+        }
+        writeCell(writer, attrs, formula, w);
+    }
+
+    /**
+     * Write a complete c element for the current pending write. A formula cell
+     * keeps its formula and gets the value as its cached result, like POI does.
+     */
+    private void writeCell(XMLEventWriter writer, List<Attribute> attrs, List<XMLEvent> formula, SheetWrites w)
+            throws XMLStreamException {
+        String text = w.text();
+        if (text != null) {
+            attrs.add(events.createAttribute("t", formula != null ? "str" : "inlineStr"));
+        }
+        writer.add(events.createStartElement("", SS_NS, "c", attrs.iterator(), null));
+        if (formula != null) {
+            for (XMLEvent fe : formula) {
+                writer.add(fe);
+            }
+        }
+
+        if (text == null) {
+            element(writer, "v", Double.toString(w.number()), false);
+        } else if (formula != null) {
+            element(writer, "v", text, false);
+        } else {
+            writer.add(events.createStartElement("", SS_NS, "is"));
+            boolean preserve = !text.isEmpty()
+                    && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+            element(writer, "t", text, preserve);
+            writer.add(events.createEndElement("", SS_NS, "is"));
+        }
+        writer.add(events.createEndElement("", SS_NS, "c"));
+    }
+
+    private void element(XMLEventWriter writer, String name, String value, boolean preserveSpace)
+            throws XMLStreamException {
+        List<Attribute> attrs = preserveSpace
+                ? List.of(events.createAttribute("xml", XMLConstants.XML_NS_URI, "space", "preserve"))
+                : List.of();
+        writer.add(events.createStartElement("", SS_NS, name, attrs.iterator(), null));
+        writer.add(events.createCharacters(value));
+        writer.add(events.createEndElement("", SS_NS, name));
+    }
+
+    /**
+     * Copy workbook.xml, setting calcPr/@fullCalcOnLoad so Excel recalculates on open
+     */
+    private void patchWorkbook(InputStream in, OutputStream out) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+
+        boolean calcPrSeen = false;
+        int depth = 0;
+        while (reader.hasNext()) {
+            XMLEvent e = reader.nextEvent();
+            if (e.isStartElement()) {
+                depth++;
+                StartElement se = e.asStartElement();
+                String local = se.getName().getLocalPart();
+                if (depth == 2 && "calcPr".equals(local)) {
+                    List<Attribute> attrs = new ArrayList<>();
+                    for (Iterator<Attribute> it = se.getAttributes(); it.hasNext(); ) {
+                        Attribute a = it.next();
+                        if (!"fullCalcOnLoad".equals(a.getName().getLocalPart())) {
+                            attrs.add(a);
+                        }
+                    }
+                    attrs.add(events.createAttribute("fullCalcOnLoad", "1"));
+                    writer.add(events.createStartElement(se.getName(), attrs.iterator(), se.getNamespaces()));
+                    calcPrSeen = true;
+                    continue;
+                }
+                if (depth == 2 && !calcPrSeen && AFTER_CALC_PR.contains(local)) {
+                    writeCalcPr(writer, se.getName());
+                    calcPrSeen = true;
+                }
+            } else if (e.isEndElement()) {
+                if (depth == 1 && !calcPrSeen) {
+                    writeCalcPr(writer, e.asEndElement().getName());
+                    calcPrSeen = true;
+                }
+                depth--;
+            }
+            writer.add(e);
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    private void writeCalcPr(XMLEventWriter writer, QName sibling) throws XMLStreamException {
+        List<Attribute> attrs = List.of(events.createAttribute("fullCalcOnLoad", "1"));
+        writer.add(events.createStartElement(sibling.getPrefix(), sibling.getNamespaceURI(), "calcPr",
+                attrs.iterator(), null));
+        writer.add(events.createEndElement(sibling.getPrefix(), sibling.getNamespaceURI(), "calcPr"));
+    }
+
+    private static String attr(StartElement se, String name) {
+        Attribute a = se.getAttributeByName(new QName(name));
+        return a == null ? null : a.getValue();
+    }
+
+    /**
+     * Cursor over the sorted writes of one sheet
+     */
+    private static final class SheetWrites {
+        private final WorkbookPatch patch;
+        private final int[] order;
+        private int pos;
+
+        SheetWrites(WorkbookPatch patch, int[] order) {
+            this.patch = patch;
+            this.order = order;
+        }
+
+        boolean hasNext() {
+            return pos < order.length;
+        }
+
+        void advance() {
+            pos++;
+        }
+
+        int row() {
+            return patch.rowAt(order[pos]);
+        }
+
+        int col() {
+            return patch.colAt(order[pos]);
+        }
+
+        double number() {
+            return patch.numberAt(order[pos]);
+        }
+
+        String text() {
+            return patch.textAt(order[pos]);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.demo.template;
+
+import com.example.demo.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Reads and VML-sanitizes the calculation sheet template once, then hands every
+ * request its own workbook opened from the cached package bytes.
+ */
+@Component
+public class TemplateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TemplateCache.class);
+
+    private static final String VML_CT = "application/vnd.openxmlformats-officedocument.vmlDrawing";
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    private final boolean preload;
+
+    private final Counter hits;
+    private final Counter loads;
+    private final Timer cloneTimer;
+    private final PipelineMetrics metrics;
+
+    private volatile CachedTemplate current;
+
+    public TemplateCache(ResourceLoader resourceLoader,
+                         MeterRegistry registry,
+                         PipelineMetrics metrics,
+                         @Value("${template.location:classpath:Line Protection Calculation Sheet Template.xlsm}") String location,
+                         @Value("${template.preload:true}") boolean preload) {
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+        this.preload = preload;
+        this.metrics = metrics;
+        this.hits = Counter.builder("template.cache.hits")
+                .description("Requests served from the cached template, the one that first loads it included")
+                .register(registry);
+        this.loads = Counter.builder("template.cache.loads")
+                .description("Template reads and VML sanitizations")
+                .register(registry);
+        this.cloneTimer = Timer.builder("template.cache.clone")
+                .description("Time to open a per-request workbook from the cached template")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!preload) {
+            return;
+        }
+        try {
+            get();
+        } catch (Exception e) {
+            // Not fatal at boot, the first upload will retry and surface the error
+            log.warn("Template preload from '{}' failed: {}", location, e.getMessage());
+        }
+    }
+
+    /**
+     * Current template snapshot, loading it on first use
+     */
+    public CachedTemplate get() throws Exception {
+        CachedTemplate t = current;
+        if (t == null) {
+            synchronized (this) {
+                if (current == null) {
+                    current = load();
+                }
+                t = current;
+            }
+        }
+        hits.increment();
+        return t;
+    }
+
+    /**
+     * Re-read the template from its location, e.g. after the file has been replaced.
+     * Requests already holding the previous snapshot finish against it.
+     */
+    public synchronized CachedTemplate reload() throws Exception {
+        current = load();
+        return current;
+    }
+
+    /**
+     * Open a private, writable workbook copy of the cached template
+     */
+    public XSSFWorkbook openWorkbook() throws Exception {
+        return openWorkbook(get());
+    }
+
+    /**
+     * Open a private, writable workbook copy of the given snapshot
+     */
+    public XSSFWorkbook openWorkbook(CachedTemplate t) throws Exception {
+        Timer.Sample sample = Timer.start();
+        try {
+            return new XSSFWorkbook(OPCPackage.open(t.openStream()));
+        } finally {
+            sample.stop(cloneTimer);
+        }
+    }
+
+    private CachedTemplate load() throws Exception {
+        Resource tpl = resourceLoader.getResource(location);
+        if (!tpl.exists()) {
+            throw new FileNotFoundException("Template missing");
+        }
+
+        long start = System.nanoTime();
+        byte[] original;
+        try (InputStream is = tpl.getInputStream()) {
+            original = is.readAllBytes();
+        }
+
+        byte[] sanitized = original;
+        long sanitizeStart = System.nanoTime();
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(original))) {
+            if (sanitizeVml(pkg)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(original.length);
+                pkg.save(out);
+                sanitized = out.toByteArray();
+            }
+        }
+        metrics.record(PipelineMetrics.SANITIZE_VML, sanitizeStart);
+
+        CachedTemplate t = restore(sanitized, location);
+        loads.increment();
+        log.info("Template loaded from '{}' ({} bytes, version {}) in {} ms",
+                location, sanitized.length, t.getVersion().substring(0, 12), (System.nanoTime() - start) / 1_000_000);
+        return t;
+    }
+
+    /**
+     * Snapshot of an already sanitized package, such as a previous template
+     * version kept to rebuild the workbooks generated from it. Not cached.
+     */
+    public CachedTemplate restore(byte[] sanitized, String location) throws Exception {
+        // Sheet layout and merged regions, read once for the patching paths
+        String workbookPartName;
+        List<TemplateSheet> sheets = new ArrayList<>();
+        try (XSSFWorkbook wb = new XSSFWorkbook(OPCPackage.open(new ByteArrayInputStream(sanitized)))) {
+            workbookPartName = zipEntryName(wb.getPackagePart());
+            for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+                XSSFSheet sheet = wb.getSheetAt(i);
+                sheets.add(new TemplateSheet(i, sheet.getSheetName(),
+                        zipEntryName(sheet.getPackagePart()), sheet.getMergedRegions()));
+            }
+        }
+
+        String version = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(sanitized));
+        return new CachedTemplate(sanitized, version, location, Instant.now(), workbookPartName, sheets);
+    }
+
+    private static String zipEntryName(PackagePart part) {
+        String name = part.getPartName().getName();
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    /**
+     * Repair malformed VML drawings so POI can open them.
+     * Returns true when any part was rewritten.
+     */
+    static boolean sanitizeVml(OPCPackage pkg) throws Exception {
+        boolean changed = false;
+        for (PackagePart part : pkg.getPartsByContentType(VML_CT)) {
+            String xml;
+            try (InputStream in = part.getInputStream()) {
+                xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            String fixed = xml;
+            fixed = fixed.replaceAll("(?i)<font\\s*>", "<font/>");
+            fixed = fixed.replaceAll("&(?![#a-zA-Z0-9]+;)", "&amp;");
+
+            if (!fixed.equals(xml)) {
+                try (OutputStream out = part.getOutputStream()) {
+                    out.write(fixed.getBytes(StandardCharsets.UTF_8));
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
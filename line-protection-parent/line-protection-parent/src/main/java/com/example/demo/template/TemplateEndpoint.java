@@ -0,0 +1,47 @@
+package com.example.demo.template;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint "template": GET shows the cached template, POST reloads it
+ * after the file has changed. Kept off the application's own port; it is only
+ * reachable over HTTP once added to management.endpoints.web.exposure.include.
+ */
+@Component
+@Endpoint(id = "template")
+public class TemplateEndpoint {
+
+    private final TemplateCache templateCache;
+
+    public TemplateEndpoint(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    @ReadOperation
+    public Map<String, Object> current() throws Exception {
+        return describe(templateCache.get());
+    }
+
+    /**
+     * Re-read the template after the file has changed
+     */
+    @WriteOperation
+    public Map<String, Object> reload() throws Exception {
+        return describe(templateCache.reload());
+    }
+
+    public static Map<String, Object> describe(CachedTemplate t) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("location", t.getLocation());
+        body.put("version", t.getVersion());
+        body.put("size", t.size());
+        body.put("loadedAt", t.getLoadedAt().toString());
+        return body;
+    }
+}
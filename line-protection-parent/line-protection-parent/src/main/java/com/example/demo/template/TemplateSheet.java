@@ -0,0 +1,43 @@
+package com.example.demo.template;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.List;
+
+/**
+ * Read-only description of one template sheet: its position in the workbook,
+ * the ZIP entry holding its XML and its merged regions.
+ */
+public final class TemplateSheet {
+
+    private final int index;
+    private final String name;
+    private final String partName;
+    private final MergedRegionIndex mergedRegions;
+
+    TemplateSheet(int index, String name, String partName, List<CellRangeAddress> mergedRegions) {
+        this.index = index;
+        this.name = name;
+        this.partName = partName;
+        this.mergedRegions = new MergedRegionIndex(mergedRegions);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * ZIP entry name of the sheet XML, e.g. "xl/worksheets/sheet1.xml"
+     */
+    public String getPartName() {
+        return partName;
+    }
+
+    public MergedRegionIndex getMergedRegions() {
+        return mergedRegions;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.demo.template;
+
+import com.example.demo.csv.NumberScanner;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The cell writes of one generated workbook, recorded against the template
+ * before any workbook is opened. Targets are already resolved to the anchor
+ * cell of their merged region, so the same patch can be applied through POI
+ * or streamed into the sheet XML by {@link StreamingWorkbookWriter}.
+ *
+ * A patch is also the whole difference between a generated workbook and its
+ * template: {@link #toDelta()} stores it in a few kilobytes and
+ * {@link #fromDelta} rebuilds it, and so the workbook, against the same template.
+ */
+public final class WorkbookPatch {
+
+    private static final int DELTA_FORMAT = 1;
+
+    private final CachedTemplate template;
+
+    private int size;
+    private int[] sheets = new int[128];
+    private int[] rows = new int[128];
+    private int[] cols = new int[128];
+    private double[] numbers = new double[128];
+    private String[] texts = new String[128];
+
+    public WorkbookPatch(CachedTemplate template) {
+        this.template = template;
+    }
+
+    public CachedTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Write raw into the cell at addr, or into the anchor of the merged region
+     * containing it. Numeric text is stored as a number.
+     */
+    public void write(TemplateSheet sheet, String addr, String raw) {
+        CellAddress ca = new CellAddress(addr);
+        int r = ca.getRow();
+        int c = ca.getColumn();
+
+        MergedRegionIndex merged = sheet.getMergedRegions();
+        int m = merged.find(r, c);
+        int wr = (m >= 0) ? merged.firstRow(m)    : r;
+        int wc = (m >= 0) ? merged.firstColumn(m) : c;
+
+        write(sheet.getIndex(), wr, wc, raw);
+    }
+
+    /**
+     * Write value into the cell at addr, or into the anchor of the merged
+     * region containing it. Infinite values are written as 0, as Excel has no
+     * representation for them.
+     */
+    public void write(TemplateSheet sheet, String addr, double value) {
+        CellAddress ca = new CellAddress(addr);
+        int r = ca.getRow();
+        int c = ca.getColumn();
+
+        MergedRegionIndex merged = sheet.getMergedRegions();
+        int m = merged.find(r, c);
+        int wr = (m >= 0) ? merged.firstRow(m)    : r;
+        int wc = (m >= 0) ? merged.firstColumn(m) : c;
+
+        write(sheet.getIndex(), wr, wc, value);
+    }
+
+    /**
+     * Write raw into an already resolved anchor cell. Numeric text is stored as a number.
+     */
+    public void write(int sheetIndex, int row, int col, String raw) {
+        double number = NumberScanner.parseExact(raw);
+        if (Double.isNaN(number)) {
+            add(sheetIndex, row, col, 0, raw == null ? "" : raw);
+        } else {
+            write(sheetIndex, row, col, number);
+        }
+    }
+
+    /**
+     * Write a number into an already resolved anchor cell; infinite values are written as 0
+     */
+    public void write(int sheetIndex, int row, int col, double value) {
+        add(sheetIndex, row, col, Double.isInfinite(value) ? 0 : value, null);
+    }
+
+    /**
+     * Same as {@link #write(TemplateSheet, String, String)} but skips blank values so the template default stays
+     */
+    public void writeIfPresent(TemplateSheet sheet, String addr, String val) {
+        if (val != null && !val.isBlank()) {
+            write(sheet, addr, val);
+        }
+    }
+
+    /**
+     * Same as {@link #write(TemplateSheet, String, double)} but skips missing (NaN) values so the template default stays
+     */
+    public void writeIfPresent(TemplateSheet sheet, String addr, double val) {
+        if (!Double.isNaN(val)) {
+            write(sheet, addr, val);
+        }
+    }
+
+    private void add(int sheet, int row, int col, double number, String text) {
+        if (size == sheets.length) {
+            int n = size * 2;
+            sheets = Arrays.copyOf(sheets, n);
+            rows = Arrays.copyOf(rows, n);
+            cols = Arrays.copyOf(cols, n);
+            numbers = Arrays.copyOf(numbers, n);
+            texts = Arrays.copyOf(texts, n);
+        }
+        sheets[size] = sheet;
+        rows[size] = row;
+        cols[size] = col;
+        numbers[size] = number;
+        texts[size] = text;
+        size++;
+    }
+
+    /**
+     * Apply every write to a workbook opened from the same template, in write order
+     */
+    public void applyTo(Workbook wb) {
+        for (int i = 0; i < size; i++) {
+            Sheet sheet = wb.getSheetAt(sheets[i]);
+            Row row = sheet.getRow(rows[i]);
+            if (row == null) row = sheet.createRow(rows[i]);
+            Cell cell = row.getCell(cols[i], Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
+            if (texts[i] == null) {
+                cell.setCellValue(numbers[i]);
+            } else {
+                cell.setCellValue(texts[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The writes in order as a deflated binary delta: format, count, then
+     * per write sheet, row, column and a number or UTF-8 text
+     */
+    public byte[] toDelta() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeByte(DELTA_FORMAT);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeShort(sheets[i]);
+                out.writeInt(rows[i]);
+                out.writeShort(cols[i]);
+                if (texts[i] == null) {
+                    out.writeBoolean(false);
+                    out.writeDouble(numbers[i]);
+                } else {
+                    byte[] text = texts[i].getBytes(StandardCharsets.UTF_8);
+                    out.writeBoolean(true);
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Delta encoding failed", e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rebuild the patch stored by {@link #toDelta()}; template must be the one it was recorded against
+     *
+     * @throws IOException when the delta is truncated or of an unknown format
+     */
+    public static WorkbookPatch fromDelta(CachedTemplate template, byte[] delta) throws IOException {
+        WorkbookPatch patch = new WorkbookPatch(template);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(delta)))) {
+            int format = in.readUnsignedByte();
+            if (format != DELTA_FORMAT) {
+                throw new IOException("Unknown delta format " + format);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int sheet = in.readUnsignedShort();
+                int row = in.readInt();
+                int col = in.readUnsignedShort();
+                if (in.readBoolean()) {
+                    byte[] text = in.readNBytes(in.readInt());
+                    patch.add(sheet, row, col, 0, new String(text, StandardCharsets.UTF_8));
+                } else {
+                    patch.add(sheet, row, col, in.readDouble(), null);
+                }
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * Every written cell as consecutive (sheet, row, col) triples
+     */
+    public int[] writtenCells() {
+        int[] cells = new int[size * 3];
+        for (int i = 0; i < size; i++) {
+            cells[i * 3] = sheets[i];
+            cells[i * 3 + 1] = rows[i];
+            cells[i * 3 + 2] = cols[i];
+        }
+        return cells;
+    }
+
+    int sheetAt(int i) {
+        return sheets[i];
+    }
+
+    int rowAt(int i) {
+        return rows[i];
+    }
+
+    int colAt(int i) {
+        return cols[i];
+    }
+
+    double numberAt(int i) {
+        return numbers[i];
+    }
+
+    /**
+     * Text value of write i, or null when the write is numeric
+     */
+    String textAt(int i) {
+        return texts[i];
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.demo.template;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Fixed ZIP entry times, so that a workbook is a function of its template
+ * and patch alone and a stored patch regenerates it byte for byte. POI
+ * stamps each entry it writes with the current time.
+ */
+public final class ZipTimestamps {
+
+    /**
+     * Time of every generated entry. Arbitrary, but not the DOS epoch itself:
+     * commons-compress reads that as "no time" and adds extended timestamp
+     * fields to every entry.
+     */
+    static final long FIXED = LocalDateTime.of(2000, 1, 1, 0, 0)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    private ZipTimestamps() {
+    }
+
+    /**
+     * A ZIP stream into out that gives every entry the fixed time as it is
+     * put, so headers are written with it directly. POI saves a package
+     * straight into a ZipArchiveOutputStream it is handed. Closing the
+     * returned stream leaves out open.
+     */
+    public static ZipArchiveOutputStream fixedTimeStream(OutputStream out) {
+        return new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(out)) {
+            @Override
+            public void putArchiveEntry(ZipArchiveEntry entry) throws IOException {
+                entry.setTime(FIXED);
+                super.putArchiveEntry(entry);
+            }
+        };
+    }
+}
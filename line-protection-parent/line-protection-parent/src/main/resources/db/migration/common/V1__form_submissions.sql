@@ -0,0 +1,17 @@
+-- Schema previously created by Hibernate (ddl-auto=update); IF NOT EXISTS lets a
+-- database that already has it be adopted as-is (spring.flyway.baseline-on-migrate)
+CREATE TABLE IF NOT EXISTS form_submissions (
+    id                     BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    relay_location         VARCHAR(255),
+    line_number            VARCHAR(255),
+    remote_location        VARCHAR(255),
+    nominal_system_voltage VARCHAR(255),
+    breaker_rating         VARCHAR(255),
+    conductor_rating       VARCHAR(255),
+    form_data_json         TEXT,
+    csv_file_name          VARCHAR(255),
+    uploaded_at            TIMESTAMP(6) NOT NULL,
+    generated_file_name    VARCHAR(255),
+    status                 VARCHAR(50),
+    error_message          TEXT
+);
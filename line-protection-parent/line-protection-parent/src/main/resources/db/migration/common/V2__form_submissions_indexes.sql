@@ -0,0 +1,4 @@
+-- History queries page by (uploaded_at, id) newest first; these keep every page an index range scan
+CREATE INDEX IF NOT EXISTS idx_form_submissions_uploaded_at ON form_submissions (uploaded_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_form_submissions_status ON form_submissions (status, uploaded_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_form_submissions_relay_line ON form_submissions (relay_location, line_number, uploaded_at DESC);
@@ -0,0 +1,4 @@
+-- Generated workbooks are kept as their cell writes against the template (a few KB)
+-- instead of the file (1+ MB); template_version is the SHA-256 of the template they apply to
+ALTER TABLE form_submissions ADD COLUMN IF NOT EXISTS template_version VARCHAR(64);
+ALTER TABLE form_submissions ADD COLUMN IF NOT EXISTS workbook_delta BYTEA;
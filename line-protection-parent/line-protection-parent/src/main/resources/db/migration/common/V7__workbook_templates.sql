@@ -0,0 +1,9 @@
+-- Each template version that workbook deltas were recorded against (the sanitized package
+-- whose SHA-256 is form_submissions.template_version), so a delta can still be replayed
+-- after the template has been replaced. One row of about 1 MB per template change.
+CREATE TABLE IF NOT EXISTS workbook_templates (
+    version   VARCHAR(64)   PRIMARY KEY,
+    content   BYTEA         NOT NULL,
+    location  VARCHAR(1024),
+    stored_at TIMESTAMP(6)  NOT NULL
+);
@@ -0,0 +1,3 @@
+-- Same sequence as on PostgreSQL (db/migration/postgresql/V5); H2 databases here are
+-- created empty, so the first block starts at 1
+CREATE SEQUENCE IF NOT EXISTS form_submissions_seq START WITH 1 INCREMENT BY 50;
@@ -0,0 +1,5 @@
+-- Substring search (upper(column) LIKE '%X%') through trigram GIN indexes; PostgreSQL only,
+-- other databases fall back to a scan
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_form_submissions_relay_trgm ON form_submissions USING gin (upper(relay_location) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_form_submissions_line_trgm ON form_submissions USING gin (upper(line_number) gin_trgm_ops);
@@ -0,0 +1,14 @@
+-- form_data_json was mapped as @Lob, which Hibernate stores on PostgreSQL as a large object
+-- with only its OID in the TEXT column. Inline the JSON and drop the large objects; the
+-- column now holds the text itself.
+WITH moved AS (
+    UPDATE form_submissions f
+       SET form_data_json = convert_from(lo_get(o.lo), 'UTF8')
+      FROM (SELECT id, form_data_json::oid AS lo
+              FROM form_submissions
+             WHERE form_data_json ~ '^[0-9]+$') o
+     WHERE f.id = o.id
+       AND EXISTS (SELECT 1 FROM pg_largeobject_metadata m WHERE m.oid = o.lo)
+    RETURNING o.lo
+)
+SELECT count(lo_unlink(lo)) FROM moved;
@@ -0,0 +1,8 @@
+-- Ids move from the IDENTITY column to a sequence handed out in blocks of 50 (Hibernate's
+-- pooled optimizer: a nextval of N covers ids N-49..N). The first block starts after the
+-- highest existing id; other writers get ids from the same sequence through the default.
+CREATE SEQUENCE IF NOT EXISTS form_submissions_seq INCREMENT BY 50;
+SELECT setval('form_submissions_seq', COALESCE(MAX(id), 0) + 50, false) FROM form_submissions;
+ALTER TABLE form_submissions ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE form_submissions ALTER COLUMN id SET DEFAULT nextval('form_submissions_seq');
+ALTER SEQUENCE form_submissions_seq OWNED BY form_submissions.id;
@@ -0,0 +1,228 @@
+package com.example.demo.csv;
+
+import com.opencsv.CSVReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * NumberScanner against the regex and Double.parseDouble it replaced, on
+ * random cells and on every cell of the sample exports: the same literal, and
+ * bit for bit the same value, both on the exact fast path and on the
+ * slowParse fallback. parseExact, which cell writes and calculated values
+ * go through, is held to Double.parseDouble on whole-cell literals.
+ */
+class NumberScannerTest {
+
+    private static final int CASES = 100_000;
+
+    private static final Pattern NUMBER = Pattern.compile("[-+]?\\d*\\.?\\d+(?:[eE][-+]?\\d+)?");
+
+    // The decimal forms Double.parseDouble accepts, after its own trim
+    private static final Pattern DECIMAL = Pattern.compile("[-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?[dDfF]?");
+
+    private static final String[] PADDING = {"", "", "", " ", "  ", "\t", " \t", "\r\n"};
+    private static final String[] EXACT_SUFFIXES = {"", "", "", "", "d", "D", "f", "F", "x", " 1", ",", "e", "E+", "dd"};
+
+    private static final String[] PREFIXES = {
+            "", "", "", " ", "R1= ", "Z1:", " ", "-", "+", ".", "e", "E-", "abc", "x_", ",", "--", "+-"
+    };
+    private static final String[] SUFFIXES = {
+            "", "", "", " OHMS", " ohm", " mi", "e", "e+", "E-", ".", "..5", "%", ",", " A", " deg", "x", "e1x"
+    };
+    private static final String[] INFINITY_MARKERS = {
+            "INF", "inf", "Inf", "Infinity", "INFINITY", "infinite", "Infinite", "∞", "I,N,F", "INF,INITE",
+            "INFO", "XINF", "_INF", "INF_", "INF1", "2INF", "INFIN", "INFINIT", "-INF", "(INF)"
+    };
+
+    /**
+     * The parser's first-number lookup before NumberScanner
+     */
+    private static String referenceFirstNumber(String s) {
+        if (referenceIsInfinite(s)) return "0";
+        Matcher m = NUMBER.matcher(normalize(s));
+        return m.find() ? m.group() : "";
+    }
+
+    private static boolean referenceIsInfinite(String s) {
+        String t = normalize(s);
+        String upper = t.toUpperCase();
+        return upper.contains("INFINITE") || upper.contains("INFINITY") || upper.matches(".*\\bINF\\b.*") || t.contains("∞");
+    }
+
+    private static String normalize(String s) {
+        return s.replace('\u00A0', ' ').replace(",", "").trim();
+    }
+
+    /**
+     * Double.parseDouble where the cell, whitespace aside, is a decimal literal; NaN otherwise
+     */
+    private static double referenceExact(String s) {
+        String t = s.trim();
+        return DECIMAL.matcher(t).matches() ? Double.parseDouble(t) : Double.NaN;
+    }
+
+    @Test
+    void fastPathLiteralsMatchParseDouble() {
+        // At most 15 significant digits and a decimal exponent within ±22
+        check(1, rnd -> literal(rnd, 1 + rnd.nextInt(15), rnd.nextInt(8) - 7, 7));
+    }
+
+    @Test
+    void slowPathLiteralsMatchParseDouble() {
+        check(2, rnd -> rnd.nextBoolean()
+                ? literal(rnd, 16 + rnd.nextInt(10), rnd.nextInt(45) - 22, 22)
+                : literal(rnd, 1 + rnd.nextInt(15), (rnd.nextBoolean() ? 1 : -1) * (23 + rnd.nextInt(328)), 0));
+    }
+
+    @Test
+    void randomDoublesMatchParseDouble() {
+        check(3, rnd -> switch (rnd.nextInt(3)) {
+            case 0 -> Double.toString(Double.longBitsToDouble(rnd.nextLong()));
+            case 1 -> Double.toString(rnd.nextDouble() * Math.pow(10, rnd.nextInt(40) - 20));
+            default -> Float.toString(rnd.nextFloat() * 1000);
+        });
+    }
+
+    @Test
+    void noisyCellsMatchReference() {
+        check(4, rnd -> {
+            String body = switch (rnd.nextInt(6)) {
+                case 0 -> INFINITY_MARKERS[rnd.nextInt(INFINITY_MARKERS.length)];
+                case 1 -> literal(rnd, 1 + rnd.nextInt(25), rnd.nextInt(701) - 350, rnd.nextInt(10));
+                case 2 -> literal(rnd, 1 + rnd.nextInt(5), 0, 3) + " " + literal(rnd, 1 + rnd.nextInt(5), 0, 3);
+                case 3 -> literal(rnd, 1 + rnd.nextInt(6), 0, 3) + INFINITY_MARKERS[rnd.nextInt(INFINITY_MARKERS.length)];
+                case 4 -> junk(rnd);
+                default -> literal(rnd, 1 + rnd.nextInt(15), rnd.nextInt(45) - 22, 5);
+            };
+            return PREFIXES[rnd.nextInt(PREFIXES.length)] + sprinkleCommas(rnd, body) + SUFFIXES[rnd.nextInt(SUFFIXES.length)];
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"samples/cape-sample.csv", "samples/cape-sample-2.csv"})
+    void sampleCellsMatchReference(String csvResource) throws Exception {
+        int cells = 0;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(csvResource)) {
+            assertThat(in).as(csvResource).isNotNull();
+            try (CSVReader reader = new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                for (String[] row; (row = reader.readNext()) != null; ) {
+                    for (String cell : row) {
+                        checkCell(cell);
+                        checkExact(cell);
+                        cells++;
+                    }
+                }
+            }
+        }
+        assertThat(cells).as("cells in %s", csvResource).isPositive();
+    }
+
+    @Test
+    void parseExactMatchesParseDouble() {
+        Random rnd = new Random(5);
+        for (int i = 0; i < CASES; i++) {
+            String body = switch (rnd.nextInt(5)) {
+                case 0 -> Double.toString(Double.longBitsToDouble(rnd.nextLong()));
+                case 1 -> literal(rnd, 16 + rnd.nextInt(10), rnd.nextInt(701) - 350, 22);
+                case 2 -> junk(rnd);
+                case 3 -> PREFIXES[rnd.nextInt(PREFIXES.length)] + literal(rnd, 1 + rnd.nextInt(6), 0, 3);
+                default -> literal(rnd, 1 + rnd.nextInt(15), rnd.nextInt(45) - 22, 7);
+            };
+            checkExact(PADDING[rnd.nextInt(PADDING.length)] + body
+                    + EXACT_SUFFIXES[rnd.nextInt(EXACT_SUFFIXES.length)] + PADDING[rnd.nextInt(PADDING.length)]);
+        }
+    }
+
+    private static void check(long seed, Function<Random, String> cells) {
+        Random rnd = new Random(seed);
+        for (int i = 0; i < CASES; i++) {
+            checkCell(cells.apply(rnd));
+        }
+    }
+
+    private static void checkCell(String cell) {
+        String expected = referenceFirstNumber(cell);
+
+        assertThat(NumberScanner.firstNumber(cell)).as("firstNumber(\"%s\")", cell).isEqualTo(expected);
+
+        double actual = NumberScanner.parse(cell);
+        if (expected.isEmpty()) {
+            assertThat(actual).as("parse(\"%s\")", cell).isNaN();
+        } else if (referenceIsInfinite(cell)) {
+            assertThat(actual).as("parse(\"%s\")", cell).isEqualTo(Double.POSITIVE_INFINITY);
+        } else {
+            assertThat(Double.doubleToRawLongBits(actual)).as("parse(\"%s\") = %s", cell, actual)
+                    .isEqualTo(Double.doubleToRawLongBits(Double.parseDouble(expected)));
+        }
+    }
+
+    private static void checkExact(String cell) {
+        double actual = NumberScanner.parseExact(cell);
+        assertThat(Double.doubleToRawLongBits(actual)).as("parseExact(\"%s\") = %s", cell, actual)
+                .isEqualTo(Double.doubleToRawLongBits(referenceExact(cell)));
+    }
+
+    /**
+     * A signed literal with the given number of digits, up to maxFraction of
+     * them after the point, and an exponent when exp is not 0
+     */
+    private static String literal(Random rnd, int digits, int exp, int maxFraction) {
+        StringBuilder sb = new StringBuilder();
+        switch (rnd.nextInt(4)) {
+            case 0 -> sb.append('-');
+            case 1 -> sb.append('+');
+            default -> { }
+        }
+        int fraction = Math.min(digits, rnd.nextInt(maxFraction + 1));
+        for (int d = 0; d < digits; d++) {
+            if (d == digits - fraction) {
+                sb.append('.');
+            }
+            // A leading zero now and then, which carries no precision
+            sb.append(d == 0 && rnd.nextInt(8) != 0 ? (char) ('1' + rnd.nextInt(9)) : (char) ('0' + rnd.nextInt(10)));
+        }
+        if (exp != 0 || rnd.nextInt(6) == 0) {
+            sb.append(rnd.nextBoolean() ? 'e' : 'E');
+            if (exp < 0) sb.append('-');
+            else if (rnd.nextBoolean()) sb.append('+');
+            sb.append(Math.abs(exp));
+        }
+        return sb.toString();
+    }
+
+    private static String junk(Random rnd) {
+        String alphabet = "0123456789.,+-eEiInNfF \u00A0∞_xX";
+        StringBuilder sb = new StringBuilder();
+        int length = rnd.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Thousands separators, or commas in any other place, which the cell
+     * lookup drops before matching
+     */
+    private static String sprinkleCommas(Random rnd, String s) {
+        if (rnd.nextInt(3) != 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s);
+        for (int i = rnd.nextInt(3); i >= 0; i--) {
+            sb.insert(rnd.nextInt(sb.length() + 1), ',');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.service;
+
+import com.example.demo.csv.CapeCsvParser;
+import com.example.demo.formula.FormulaEvaluationService;
+import com.example.demo.mapping.CellMappingService;
+import com.example.demo.metrics.PipelineMetrics;
+import com.example.demo.template.GenerationMode;
+import com.example.demo.template.CachedTemplate;
+import com.example.demo.template.StreamingWorkbookWriter;
+import com.example.demo.template.TemplateCache;
+import com.example.demo.template.WorkbookPatch;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The streaming renderer must produce a workbook that POI reads back with
+ * the same cells as the POI renderer's, for the same submission; and a
+ * stored delta must rebuild the very same bytes.
+ */
+class CalculationSheetGeneratorTest {
+
+    private static final String TEMPLATE = "classpath:Line Protection Calculation Sheet Template.xlsm";
+    private static final String MAPPING = "classpath:mappings/cell-mapping-v1.csv";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"samples/cape-sample.csv", "samples/cape-sample-2.csv"})
+    void streamingModeMatchesPoiCells(String csvResource) throws Exception {
+        Map<String, String> formData = new ObjectMapper().readValue(resource("samples/form.json"), new TypeReference<>() {});
+        byte[] csv = resource(csvResource);
+
+        byte[] poi = generate(GenerationMode.POI, formData, csv);
+        byte[] streaming = generate(GenerationMode.STREAMING, formData, csv);
+
+        Map<String, String> expected = cells(poi);
+        assertThat(expected.values()).anyMatch(v -> v.endsWith("S:" + formData.get("relayLocation")));
+        assertThat(cells(streaming)).containsExactlyEntriesOf(expected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(GenerationMode.class)
+    void deltaReplayReproducesWorkbook(GenerationMode mode) throws Exception {
+        Map<String, String> formData = new ObjectMapper().readValue(resource("samples/form.json"), new TypeReference<>() {});
+        TemplateCache templateCache = templateCache();
+        CalculationSheetGenerator generator = generator(templateCache, mode);
+
+        CalculationSheetGenerator.PreparedSheet sheet = generator.prepare(formData, resource("samples/cape-sample.csv"));
+        byte[] original = write(sheet);
+        byte[] delta = sheet.getPatch().toDelta();
+
+        CachedTemplate current = templateCache.get();
+        byte[] replayed = write(generator.replay(WorkbookPatch.fromDelta(current, delta)));
+        assertThat(Arrays.equals(replayed, original)).as("replayed from current template").isTrue();
+
+        // As WorkbookArchive rebuilds it once the template has been replaced
+        byte[] sanitized;
+        try (InputStream in = current.openStream()) {
+            sanitized = in.readAllBytes();
+        }
+        CachedTemplate restored = templateCache.restore(sanitized, current.getLocation());
+        assertThat(restored).isNotSameAs(current);
+        assertThat(restored.getVersion()).isEqualTo(current.getVersion());
+        byte[] rebuilt = write(generator.replay(WorkbookPatch.fromDelta(restored, delta)));
+        assertThat(Arrays.equals(rebuilt, original)).as("replayed from restored template").isTrue();
+    }
+
+    private static byte[] generate(GenerationMode mode, Map<String, String> formData, byte[] csv) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator(templateCache(), mode).generate(formData, csv, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] write(CalculationSheetGenerator.PreparedSheet sheet) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sheet.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static TemplateCache templateCache() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new TemplateCache(new DefaultResourceLoader(), registry, new PipelineMetrics(registry), TEMPLATE, false);
+    }
+
+    private static CalculationSheetGenerator generator(TemplateCache templateCache, GenerationMode mode) throws Exception {
+        DefaultResourceLoader resources = new DefaultResourceLoader();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+        return new CalculationSheetGenerator(templateCache,
+                new CellMappingService(resources, templateCache, MAPPING),
+                new CapeCsvParser(),
+                new StreamingWorkbookWriter(),
+                new ResultCache(registry, false, 0, "", 0, 0),
+                new FormulaEvaluationService(templateCache, resources, false, ""),
+                new GenerationGate(registry, false, 0, Duration.ZERO, false),
+                metrics, mode, 0);
+    }
+
+    /**
+     * Every non-blank cell of every sheet as "sheet!A1" -> "style type:value",
+     * plus each sheet's recalculation flag
+     */
+    private static Map<String, String> cells(byte[] workbook) throws Exception {
+        Map<String, String> cells = new LinkedHashMap<>();
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(workbook))) {
+            for (Sheet sheet : wb) {
+                cells.put(sheet.getSheetName() + "!forceRecalc", String.valueOf(wb.getForceFormulaRecalculation()));
+                for (Row row : sheet) {
+                    for (Cell cell : row) {
+                        String value = switch (cell.getCellType()) {
+                            case FORMULA -> "F:" + cell.getCellFormula();
+                            case NUMERIC -> "N:" + cell.getNumericCellValue();
+                            case STRING -> "S:" + cell.getStringCellValue();
+                            case BOOLEAN -> "B:" + cell.getBooleanCellValue();
+                            case BLANK -> null;
+                            default -> cell.getCellType().toString();
+                        };
+                        if (value != null) {
+                            cells.put(sheet.getSheetName() + "!" + cell.getAddress(), "s" + cell.getCellStyle().getIndex() + " " + value);
+                        }
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static byte[] resource(String name) throws Exception {
+        try (InputStream in = CalculationSheetGeneratorTest.class.getClassLoader().getResourceAsStream(name)) {
+            assertThat(in).as(name).isNotNull();
+            return in.readAllBytes();
+        }
+    }
+}